@@ -0,0 +1,73 @@
+package edu.virginia.sde.reviews;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+
+/**
+ * Generates (once) and opens the benchmark databases. Each size is generated into build/jmh-databases the first time
+ * it is needed and reused by later forks and runs, since generating a million reviews takes far longer than a trial.
+ */
+final class BenchmarkDatabases {
+    static final String[] TITLE_WORDS = SyntheticDataGenerator.TITLE_WORDS;
+
+    private static final Path DIRECTORY = Path.of("build", "jmh-databases");
+    // Fixed so every run benchmarks the same data
+    private static final long SEED = 42;
+
+    private BenchmarkDatabases() {
+    }
+
+    /**
+     * @return a database file with the given number of courses and reviews, generating it if necessary
+     */
+    static synchronized Path prepare(int courseCount, int reviewCount) throws IOException, SQLException {
+        Path file = DIRECTORY.resolve("synthetic-" + courseCount + "-courses-" + reviewCount + "-reviews.db");
+        if (Files.exists(file)) {
+            return file;
+        }
+        Files.createDirectories(DIRECTORY);
+        Path partial = DIRECTORY.resolve(file.getFileName() + ".partial");
+        Files.deleteIfExists(partial);
+        DatabaseConnection databaseConnection = new DatabaseConnection(partial.toString());
+        databaseConnection.connect();
+        try {
+            databaseConnection.createTables();
+            databaseConnection.commit();
+            new SyntheticDataGenerator(SEED).generate(databaseConnection, courseCount,
+                    userCountFor(courseCount, reviewCount), reviewCount);
+        } finally {
+            databaseConnection.disconnect();
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /**
+     * @return a private copy of the database, for benchmarks that write to it
+     */
+    static Path copyOf(Path file) throws IOException {
+        Path copy = Files.createTempFile("bench-", ".db");
+        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+        copy.toFile().deleteOnExit();
+        return copy;
+    }
+
+    static DatabaseConnection open(Path file) throws SQLException {
+        DatabaseConnection databaseConnection = new DatabaseConnection(file.toString());
+        databaseConnection.connect();
+        return databaseConnection;
+    }
+
+    static String username(int userNumber) {
+        return SyntheticDataGenerator.username(userNumber);
+    }
+
+    static int userCountFor(int courseCount, int reviewCount) {
+        // About ten reviews per user, and always enough users for every review to be a distinct (user, course) pair
+        int users = Math.max(100, reviewCount / 10);
+        return Math.max(users, (reviewCount + courseCount - 1) / courseCount);
+    }
+}
@@ -0,0 +1,56 @@
+package edu.virginia.sde.reviews;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A generated database of the requested size, opened read-mostly and shared by every benchmark thread.
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+    @Param({"1000", "100000"})
+    public int courseCount;
+
+    @Param({"10000", "1000000"})
+    public int reviewCount;
+
+    DatabaseConnection databaseConnection;
+    CourseDatabase courseDatabase;
+    ReviewDatabase reviewDatabase;
+    UserDatabase userDatabase;
+    ReviewService reviewService;
+    CourseService courseService;
+    int userCount;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        Path file = BenchmarkDatabases.prepare(courseCount, reviewCount);
+        databaseConnection = BenchmarkDatabases.open(file);
+        courseDatabase = new CourseDatabase(databaseConnection);
+        reviewDatabase = new ReviewDatabase(databaseConnection);
+        userDatabase = new UserDatabase(databaseConnection);
+        reviewService = new ReviewService(reviewDatabase);
+        courseService = new CourseService(courseDatabase, reviewService);
+        userCount = BenchmarkDatabases.userCountFor(courseCount, reviewCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        databaseConnection.disconnect();
+    }
+
+    int randomCourseId() {
+        return ThreadLocalRandom.current().nextInt(courseCount) + 1;
+    }
+
+    int randomUserId() {
+        return ThreadLocalRandom.current().nextInt(userCount) + 1;
+    }
+
+    String randomSearchTerm() {
+        String[] words = BenchmarkDatabases.TITLE_WORDS;
+        return words[ThreadLocalRandom.current().nextInt(words.length)];
+    }
+}
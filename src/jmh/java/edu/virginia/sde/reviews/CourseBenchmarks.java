@@ -0,0 +1,42 @@
+package edu.virginia.sde.reviews;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CourseBenchmarks {
+
+    @Benchmark
+    public List<Course> searchCourses(CatalogState state) throws SQLException {
+        return state.courseDatabase.searchCourses(state.randomSearchTerm(), 500);
+    }
+
+    @Benchmark
+    public List<Course> suggestCourses(CatalogState state) {
+        String term = state.randomSearchTerm();
+        return state.courseService.suggestCourses(term.substring(0, Math.min(3, term.length())), 100);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Course> getAllCourses(CatalogState state) throws SQLException {
+        return state.courseDatabase.getAllCourses();
+    }
+
+    @Benchmark
+    public List<Course> topCoursesOverall(CatalogState state) {
+        return state.courseService.getTopCourses(10, RatingHistogramIndex.Ranking.SCORE);
+    }
+
+    @Benchmark
+    public List<Course> topCoursesInSubject(CatalogState state) {
+        String[] subjects = SyntheticDataGenerator.SUBJECTS;
+        String subject = subjects[ThreadLocalRandom.current().nextInt(subjects.length)];
+        return state.courseService.getTopCourses(subject, 10, RatingHistogramIndex.Ranking.REVIEW_COUNT);
+    }
+}
@@ -0,0 +1,78 @@
+package edu.virginia.sde.reviews;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReviewBenchmarks {
+
+    /**
+     * A private copy of the catalog plus a set of users with no reviews, so every addReview call inserts a new
+     * (user, course) pair without hitting the UniqueReview constraint.
+     */
+    @State(Scope.Benchmark)
+    public static class WritableCatalogState {
+        private static final int FRESH_USERS = 1000;
+
+        @Param({"1000", "100000"})
+        public int courseCount;
+
+        @Param({"10000", "1000000"})
+        public int reviewCount;
+
+        DatabaseConnection databaseConnection;
+        ReviewDatabase reviewDatabase;
+        int firstFreshUserId;
+        long nextReview;
+
+        @Setup(Level.Trial)
+        public void open() throws Exception {
+            Path copy = BenchmarkDatabases.copyOf(BenchmarkDatabases.prepare(courseCount, reviewCount));
+            databaseConnection = BenchmarkDatabases.open(copy);
+            reviewDatabase = new ReviewDatabase(databaseConnection);
+            firstFreshUserId = BenchmarkDatabases.userCountFor(courseCount, reviewCount) + 1;
+            databaseConnection.write("ReviewBenchmarks.addFreshUsers", statements -> {
+                PreparedStatement stmt = statements.prepare("INSERT INTO Users (Username, Password) VALUES (?, ?)");
+                for (int i = 0; i < FRESH_USERS; i++) {
+                    stmt.setString(1, "fresh" + i);
+                    stmt.setString(2, "password");
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            databaseConnection.disconnect();
+        }
+
+        synchronized Review nextReview() {
+            long review = nextReview++;
+            int userId = firstFreshUserId + (int) (review / courseCount % FRESH_USERS);
+            int courseId = (int) (review % courseCount) + 1;
+            return new Review(courseId, userId, 1 + (int) (review % 5), "Benchmark", new Timestamp(System.currentTimeMillis()));
+        }
+    }
+
+    @Benchmark
+    public double getAverageRatingForCourse(CatalogState state) {
+        return state.reviewService.getAverageRatingForCourse(state.randomCourseId());
+    }
+
+    @Benchmark
+    public boolean checkReviewExists(CatalogState state) {
+        return state.reviewService.checkReviewExists(state.randomUserId(), state.randomCourseId());
+    }
+
+    @Benchmark
+    public boolean addReview(WritableCatalogState state) throws SQLException {
+        return state.reviewDatabase.addReview(state.nextReview());
+    }
+}
@@ -0,0 +1,17 @@
+package edu.virginia.sde.reviews;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserBenchmarks {
+
+    @Benchmark
+    public Optional<User> getUserByUsername(CatalogState state) throws SQLException {
+        return state.userDatabase.getUserByUsername(BenchmarkDatabases.username(state.randomUserId() - 1));
+    }
+}
@@ -0,0 +1,558 @@
+package edu.virginia.sde.reviews;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * A headless JSON-over-HTTP front end for the services, built on the JDK's HTTP server with one virtual thread per
+ * request, so thousands of concurrent clients cost little more than the database work they cause. It does not touch
+ * JavaFX. Clients log in with {@code POST /api/sessions} and send the returned token as
+ * {@code Authorization: Bearer <token>}.
+ * <pre>
+ * POST   /api/users                      {"username", "password"}          register
+ * POST   /api/sessions                   {"username", "password"}          log in, returns {"token"}
+ * DELETE /api/sessions                                                     log out
+ * GET    /api/courses?q=&amp;after=&amp;limit=                                  page of matching (q) or all courses
+ * POST   /api/courses                    {"mnemonic", "number", "title"}   add a course
+ * GET    /api/courses/top?subject=&amp;by=score|count&amp;limit=                  best rated or most reviewed courses
+ * GET    /api/courses/{id}                                                 course with its rating statistics
+ * GET    /api/courses/{id}/reviews?afterTimestamp=&amp;afterId=&amp;limit=         page of reviews, newest first
+ * POST   /api/courses/{id}/reviews       {"rating", "comment"}             review a course
+ * GET    /api/me/reviews?afterTimestamp=&amp;afterId=&amp;limit=                 page of your reviews with course details
+ * PUT    /api/reviews/{id}               {"rating", "comment"}             edit your review
+ * DELETE /api/reviews/{id}                                                 delete your review
+ * GET    /api/export/courses?q=                                            every (matching) course by id, as JSON lines
+ * GET    /api/export/courses/{id}/reviews                                  every review of a course, as JSON lines
+ * </pre>
+ * Errors are returned as {@code {"error": "..."}} with a 4xx or 5xx status.
+ */
+public class ApiServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_REQUEST_BYTES = 64 * 1024;
+    // Rows read per database round trip when exporting; the reader is handed back between pages
+    private static final int EXPORT_PAGE_SIZE = 500;
+
+    /**
+     * Ends a request early with the given status and error message.
+     */
+    static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * A response body written one JSON object per line, one keyset page at a time, so exports take constant memory.
+     * No database connection is held while a page is written, so a slow client cannot tie up the reader pool.
+     */
+    private static class JsonLines<T> {
+        // Reads the page after the given row, or the first page for null
+        private final Function<T, List<T>> pageAfter;
+        private final Function<T, Map<String, Object>> toJson;
+
+        JsonLines(Function<T, List<T>> pageAfter, Function<T, Map<String, Object>> toJson) {
+            this.pageAfter = pageAfter;
+            this.toJson = toJson;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final UserService userService;
+    private final CourseService courseService;
+    private final ReviewService reviewService;
+
+    public ApiServer(InetSocketAddress address, UserService userService, CourseService courseService,
+                     ReviewService reviewService) throws IOException {
+        this.userService = userService;
+        this.courseService = courseService;
+        this.reviewService = reviewService;
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to {@code delaySeconds} for the ones in flight, then stops.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Object response = route(exchange);
+            if (response instanceof JsonLines<?> jsonLines) {
+                sendJsonLines(exchange, jsonLines);
+                return;
+            }
+            int status = "POST".equals(exchange.getRequestMethod()) ? 201 : 200;
+            sendJson(exchange, response == null ? 204 : status, response);
+        } catch (ApiException e) {
+            sendJson(exchange, e.status, Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, Map.of("error", String.valueOf(e.getMessage())));
+        } catch (RuntimeException e) {
+            System.err.println("Error handling " + describe(exchange) + ": " + describe(e));
+            sendJson(exchange, 500, Map.of("error", "Internal server error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the response body, or null for 204 No Content
+     */
+    private Object route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        switch (path[0]) {
+            case "users" -> {
+                if (path.length == 1 && method.equals("POST")) {
+                    return register(readBody(exchange));
+                }
+            }
+            case "sessions" -> {
+                if (path.length == 1 && method.equals("POST")) {
+                    return login(readBody(exchange));
+                }
+                if (path.length == 1 && method.equals("DELETE")) {
+                    authenticate(exchange);
+                    userService.logout(bearerToken(exchange));
+                    return null;
+                }
+            }
+            case "courses" -> {
+                if (path.length == 1 && method.equals("GET")) {
+                    return listCourses(query);
+                }
+                if (path.length == 1 && method.equals("POST")) {
+                    authenticate(exchange);
+                    return addCourse(readBody(exchange));
+                }
+                if (path.length == 2 && path[1].equals("top") && method.equals("GET")) {
+                    return topCourses(query);
+                }
+                if (path.length == 2 && method.equals("GET")) {
+                    return getCourse(parseId(path[1]));
+                }
+                if (path.length == 3 && path[2].equals("reviews") && method.equals("GET")) {
+                    int courseId = requireCourse(parseId(path[1])).getId();
+                    return toJson(reviewService.getReviewsForCoursePage(courseId, pageAfter(query), pageSize(query)));
+                }
+                if (path.length == 3 && path[2].equals("reviews") && method.equals("POST")) {
+                    User user = authenticate(exchange);
+                    return addReview(user, requireCourse(parseId(path[1])).getId(), readBody(exchange));
+                }
+            }
+            case "me" -> {
+                if (path.length == 2 && path[1].equals("reviews") && method.equals("GET")) {
+                    User user = authenticate(exchange);
+                    return toJson(reviewService.getReviewDetailsByUserPage(user.getId(), pageAfter(query),
+                            pageSize(query)));
+                }
+            }
+            case "reviews" -> {
+                if (path.length == 2 && method.equals("PUT")) {
+                    User user = authenticate(exchange);
+                    return updateReview(requireOwnReview(user, parseId(path[1])), readBody(exchange));
+                }
+                if (path.length == 2 && method.equals("DELETE")) {
+                    User user = authenticate(exchange);
+                    Review review = requireOwnReview(user, parseId(path[1]));
+                    requireWritten(reviewService.deleteReview(review.getId()));
+                    return null;
+                }
+            }
+            case "export" -> {
+                if (path.length == 2 && path[1].equals("courses") && method.equals("GET")) {
+                    String searchTerm = query.get("q");
+                    return new JsonLines<Course>(last -> courseService.searchCoursesPage(searchTerm,
+                            last == null ? 0 : last.getId(), EXPORT_PAGE_SIZE), ApiServer::toJson);
+                }
+                if (path.length == 4 && path[1].equals("courses") && path[3].equals("reviews")
+                        && method.equals("GET")) {
+                    int courseId = requireCourse(parseId(path[2])).getId();
+                    return new JsonLines<Review>(last -> reviewService.getReviewsForCoursePage(courseId, last,
+                            EXPORT_PAGE_SIZE), ApiServer::toJson);
+                }
+            }
+            default -> {
+            }
+        }
+        throw new ApiException(404, "No such endpoint: " + method + " " + exchange.getRequestURI().getPath());
+    }
+
+    private Object topCourses(Map<String, String> query) {
+        RatingHistogramIndex.Ranking ranking = switch (query.getOrDefault("by", "score")) {
+            case "score" -> RatingHistogramIndex.Ranking.SCORE;
+            case "count" -> RatingHistogramIndex.Ranking.REVIEW_COUNT;
+            default -> throw new ApiException(400, "by must be score or count");
+        };
+        String subject = query.get("subject");
+        List<Course> top = subject == null || subject.isBlank()
+                ? courseService.getTopCourses(pageSize(query), ranking)
+                : courseService.getTopCourses(subject, pageSize(query), ranking);
+        List<Map<String, Object>> json = new ArrayList<>();
+        for (Course course : top) {
+            Map<String, Object> courseJson = toJson(course);
+            courseJson.put("reviewCount", reviewService.getReviewCount(course.getId()));
+            courseJson.put("score", reviewService.getBayesianRating(course.getId()));
+            json.add(courseJson);
+        }
+        return json;
+    }
+
+    private Object register(Map<String, Object> body) {
+        User user = new User(requireString(body, "username"), requireString(body, "password"));
+        requireWritten(userService.registerUser(user));
+        return Map.of("username", user.getUsername());
+    }
+
+    private Object login(Map<String, Object> body) {
+        String token = userService.login(requireString(body, "username"), requireString(body, "password"))
+                .orElseThrow(() -> new ApiException(401, "Incorrect username or password"));
+        return Map.of("token", token);
+    }
+
+    /**
+     * Pages through every course, or only those matching {@code q}, in id order.
+     */
+    private Object listCourses(Map<String, String> query) {
+        int after = query.containsKey("after") ? parseId(query.get("after")) : 0;
+        return toJsonCourses(courseService.searchCoursesPage(query.get("q"), after, pageSize(query)));
+    }
+
+    private Object addCourse(Map<String, Object> body) {
+        Course course = new Course(requireString(body, "mnemonic").toUpperCase(Locale.ROOT),
+                requireString(body, "number"), requireString(body, "title"));
+        // The existence check is part of the insert, so a concurrent add of the same course is also a conflict
+        if (!courseService.addCourse(course)) {
+            throw new ApiException(409, "Course already exists");
+        }
+        return toJson(course);
+    }
+
+    private Object getCourse(int courseId) {
+        Map<String, Object> json = toJson(requireCourse(courseId));
+        CourseStats stats = reviewService.getCourseStats(courseId);
+        json.put("reviewCount", stats.getReviewCount());
+        json.put("averageRating", stats.hasReviews() ? stats.getAverageRating() : null);
+        List<Integer> ratingCounts = new ArrayList<>();
+        for (int rating = 1; rating <= 5; rating++) {
+            ratingCounts.add(stats.getRatingCount(rating));
+        }
+        json.put("ratingCounts", ratingCounts);
+        return json;
+    }
+
+    private Object addReview(User user, int courseId, Map<String, Object> body) {
+        Review review = new Review(courseId, user.getId(), requireInt(body, "rating"), optionalString(body, "comment"),
+                new Timestamp(System.currentTimeMillis()));
+        requireWritten(reviewService.createReview(review));
+        return toJson(review);
+    }
+
+    private Object updateReview(Review review, Map<String, Object> body) {
+        review.setRating(requireInt(body, "rating"));
+        review.setComment(optionalString(body, "comment"));
+        requireWritten(reviewService.updateReview(review));
+        return toJson(reviewService.getReviewById(review.getId())
+                .orElseThrow(() -> new ApiException(404, "Review not found")));
+    }
+
+    /**
+     * Ends the request with the status matching a write the service refused. A database failure is rethrown to be
+     * logged and answered like any other server error.
+     */
+    private static void requireWritten(WriteResult result) {
+        if (result.isOk()) {
+            return;
+        }
+        String error = result.getError().orElseThrow();
+        switch (result.getStatus()) {
+            case INVALID -> throw new ApiException(400, error);
+            case CONFLICT -> throw new ApiException(409, error);
+            case NOT_FOUND -> throw new ApiException(404, error);
+            default -> throw new RuntimeException(error, result.getCause());
+        }
+    }
+
+    private User authenticate(HttpExchange exchange) {
+        return userService.getUserForSession(bearerToken(exchange))
+                .orElseThrow(() -> new ApiException(401, "Log in first"));
+    }
+
+    private String bearerToken(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        return authorization.substring("Bearer ".length()).trim();
+    }
+
+    private Course requireCourse(int courseId) {
+        return courseService.getCourseById(courseId)
+                .orElseThrow(() -> new ApiException(404, "Course not found"));
+    }
+
+    private Review requireOwnReview(User user, int reviewId) {
+        Review review = reviewService.getReviewById(reviewId)
+                .orElseThrow(() -> new ApiException(404, "Review not found"));
+        if (review.getUserId() != user.getId()) {
+            throw new ApiException(403, "You can only change your own reviews");
+        }
+        return review;
+    }
+
+    private static Review pageAfter(Map<String, String> query) {
+        if (!query.containsKey("afterId") || !query.containsKey("afterTimestamp")) {
+            return null;
+        }
+        Review after = new Review();
+        after.setId(parseId(query.get("afterId")));
+        after.setTimestamp(new Timestamp(parseLong(query.get("afterTimestamp"))));
+        return after;
+    }
+
+    private static int pageSize(Map<String, String> query) {
+        if (!query.containsKey("limit")) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        int limit = parseId(query.get("limit"));
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_REQUEST_BYTES + 1);
+            if (bytes.length > MAX_REQUEST_BYTES) {
+                throw new ApiException(413, "Request body is too large");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Sends the lines with chunked encoding, reading the next page only once the previous one has been written. Once
+     * the headers are out an error can no longer change the status, so a failure part way through just cuts the
+     * response short.
+     */
+    private static <T> void sendJsonLines(HttpExchange exchange, JsonLines<T> body) throws IOException {
+        // Read the first page before committing to a 200, so that a database error still gets a proper status
+        List<T> page = body.pageAfter.apply(null);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+            while (!page.isEmpty()) {
+                for (T row : page) {
+                    out.write(Json.write(body.toJson.apply(row)));
+                    out.write('\n');
+                }
+                if (page.size() < EXPORT_PAGE_SIZE) {
+                    break;
+                }
+                page = body.pageAfter.apply(page.get(page.size() - 1));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Export cut short for " + describe(exchange) + ": " + describe(e));
+        }
+    }
+
+    private static String describe(HttpExchange exchange) {
+        return exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+    }
+
+    /**
+     * @return the error and, for wrapped errors such as "Database error occurred", what caused it
+     */
+    private static String describe(RuntimeException e) {
+        return e.getCause() == null ? String.valueOf(e) : e + " (caused by " + e.getCause() + ")";
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Expected a number but found: " + text);
+        }
+    }
+
+    private static long parseLong(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Expected a number but found: " + text);
+        }
+    }
+
+    private static String requireString(Map<String, Object> body, String field) {
+        if (!(body.get(field) instanceof String value)) {
+            throw new ApiException(400, "\"" + field + "\" must be a string");
+        }
+        return value;
+    }
+
+    private static String optionalString(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (value != null && !(value instanceof String)) {
+            throw new ApiException(400, "\"" + field + "\" must be a string");
+        }
+        return value == null ? "" : (String) value;
+    }
+
+    private static int requireInt(Map<String, Object> body, String field) {
+        if (!(body.get(field) instanceof Long value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new ApiException(400, "\"" + field + "\" must be an integer");
+        }
+        return value.intValue();
+    }
+
+    private static List<Map<String, Object>> toJson(List<? extends Review> reviews) {
+        List<Map<String, Object>> json = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            json.add(toJson(review));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> toJson(Review review) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", review.getId());
+        json.put("courseId", review.getCourseId());
+        json.put("userId", review.getUserId());
+        json.put("rating", review.getRating());
+        json.put("comment", review.getComment());
+        json.put("timestamp", review.getTimestamp() == null ? null : review.getTimestamp().getTime());
+        if (review instanceof ReviewDetails details) {
+            json.put("course", toJson(details.getCourse()));
+        }
+        return json;
+    }
+
+    private static List<Map<String, Object>> toJsonCourses(List<Course> courses) {
+        List<Map<String, Object>> json = new ArrayList<>(courses.size());
+        for (Course course : courses) {
+            json.add(toJson(course));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> toJson(Course course) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", course.getId());
+        json.put("mnemonic", course.getMnemonic());
+        json.put("number", course.getNumber());
+        json.put("title", course.getTitle());
+        return json;
+    }
+
+    /**
+     * Serves the API for a database file: {@code ApiServer <database file> [port] [catalog snapshot]}, where the
+     * optional snapshot (see {@link CatalogSnapshot}) pre-fills the in-memory indexes if it is still current
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ApiServer <database file> [port] [catalog snapshot]");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        DatabaseConnection databaseConnection = new DatabaseConnection(args[0]);
+        databaseConnection.connect();
+        databaseConnection.createTables();
+        databaseConnection.commit();
+
+        SessionRegistry sessions = new SessionRegistry();
+        ReviewDatabase reviewDatabase = new ReviewDatabase(databaseConnection);
+        // Many clients may post reviews at once, so let them share commits
+        ReviewWriteQueue writeQueue = new ReviewWriteQueue(databaseConnection, reviewDatabase);
+        ReviewService reviewService = new ReviewService(reviewDatabase, writeQueue);
+        CourseService courseService = new CourseService(new CourseDatabase(databaseConnection), reviewService);
+        if (args.length > 2) {
+            // Start with warm indexes rather than scanning the catalog on the first requests
+            if (!courseService.loadSnapshot(CatalogSnapshot.read(Path.of(args[2])))) {
+                System.err.println("Catalog snapshot " + args[2] + " no longer matches the database; loading the "
+                        + "catalog from the database instead");
+                courseService.warmUp();
+                reviewService.getRatingIndex();
+            }
+        }
+        ApiServer apiServer = new ApiServer(new InetSocketAddress(port),
+                new UserService(new UserDatabase(databaseConnection), sessions), courseService, reviewService);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apiServer.stop(2);
+            writeQueue.close();
+            sessions.close();
+            try {
+                databaseConnection.disconnect();
+            } catch (Exception e) {
+                System.err.println("Error closing the database: " + e.getMessage());
+            }
+        }));
+        apiServer.start();
+        System.out.println("Serving " + args[0] + " on http://localhost:" + apiServer.getPort() + "/api/");
+    }
+}
@@ -0,0 +1,503 @@
+package edu.virginia.sde.reviews;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A compact, columnar binary copy of the course catalog (courses, their rating histograms and every review) that a
+ * node can load in milliseconds instead of scanning the database, and that can be shipped to new machines as one file.
+ * <p>
+ * All numbers are big-endian. After a magic number, a format version and the snapshot's {@link Fingerprint} come four
+ * sections, each a count followed by its columns, every column holding one value per row:
+ * <pre>
+ * header   int magic, int version, long ChangeCount, int CourseCount, int ReviewCount
+ * courses  int count, int[] CourseID, string[] SubjectMnemonic, string[] CourseNumber, string[] Title
+ * ratings  int[] Rating1 .. int[] Rating5, one column per star, aligned with the course columns
+ * keys     int count, string[] Key, int[] Run, int[] CourseID: the {@link CoursePrefixIndex} in sorted order, each
+ *          distinct key stored once with the number of CourseIDs (Run) filed under it
+ * reviews  int count, int[] ReviewID, int[] CourseID, int[] UserID, byte[] Rating, long[] Timestamp (epoch
+ *          milliseconds, Long.MIN_VALUE if null), string[] Comment
+ * </pre>
+ * A string is an int byte length (-1 for null) followed by that many bytes of UTF-8.
+ * <p>
+ * Reading maps the file into memory and decodes the courses, ratings and search keys with bulk primitive reads, so the
+ * indexes are filled without sorting anything; reviews are only decoded when streamed. The ratings are computed from
+ * the exported reviews, so they always agree with them even if the database was being written during the export.
+ * The fingerprint records the database's change counter as it was before the export began, so comparing it with the
+ * database's tells whether the snapshot is still current; a write made during the export makes it look stale.
+ */
+public class CatalogSnapshot {
+    public static final int FORMAT_VERSION = 3;
+
+    private static final int MAGIC = 0x43525653; // "CRVS"
+    private static final int RATINGS = 5;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+
+    /**
+     * Identifies a state of the catalog by the database's change counter, which triggers bump on every insert, update
+     * and delete of a course or review (see {@link CourseDatabase#getCatalogChangeCount()}), together with the course
+     * and review counts. A snapshot whose fingerprint differs from the database's is out of date.
+     */
+    public static class Fingerprint {
+        private final long changeCount;
+        private final int courseCount;
+        private final int reviewCount;
+
+        public Fingerprint(long changeCount, int courseCount, int reviewCount) {
+            this.changeCount = changeCount;
+            this.courseCount = courseCount;
+            this.reviewCount = reviewCount;
+        }
+
+        public long getChangeCount() {
+            return changeCount;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Fingerprint fingerprint
+                    && changeCount == fingerprint.changeCount
+                    && courseCount == fingerprint.courseCount
+                    && reviewCount == fingerprint.reviewCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(changeCount, courseCount, reviewCount);
+        }
+
+        @Override
+        public String toString() {
+            return "change " + changeCount + ", " + courseCount + " courses, " + reviewCount + " reviews";
+        }
+    }
+
+    private final Fingerprint fingerprint;
+    private final List<Course> courses;
+    private final int[][] ratingCounts;
+    private final String[] searchKeys;
+    private final int[] searchCourseIds;
+    private final int reviewCount;
+    // The review columns, starting at the ReviewID column; shared read-only by every stream over them
+    private final ByteBuffer reviewColumns;
+
+    private CatalogSnapshot(Fingerprint fingerprint, List<Course> courses, int[][] ratingCounts, String[] searchKeys,
+                            int[] searchCourseIds, int reviewCount, ByteBuffer reviewColumns) {
+        this.fingerprint = fingerprint;
+        this.courses = courses;
+        this.ratingCounts = ratingCounts;
+        this.searchKeys = searchKeys;
+        this.searchCourseIds = searchCourseIds;
+        this.reviewCount = reviewCount;
+        this.reviewColumns = reviewColumns;
+    }
+
+    /**
+     * Writes every course and review in the database to a snapshot file. The file is written under a temporary name
+     * and then moved into place, so readers never see half a snapshot.
+     */
+    public static void export(Path file, CourseDatabase courseDatabase, ReviewDatabase reviewDatabase)
+            throws SQLException, IOException {
+        // Read before the rows, so that anything written while they are read leaves the snapshot behind the database
+        long changeCount = courseDatabase.getCatalogChangeCount();
+        try (Stream<Course> courses = courseDatabase.streamAllCourses();
+             Stream<Review> reviews = reviewDatabase.streamAllReviews()) {
+            write(file, changeCount, courses, reviews);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given courses and reviews. Reviews of courses that are not among the courses are left
+     * out.
+     *
+     * @param changeCount the database's change counter from before the courses and reviews were read
+     */
+    public static void write(Path file, long changeCount, Stream<Course> courses, Stream<Review> reviews)
+            throws IOException {
+        List<Course> courseList = courses.toList();
+        Map<Integer, Integer> positionsById = new HashMap<>();
+        for (int i = 0; i < courseList.size(); i++) {
+            positionsById.put(courseList.get(i).getId(), i);
+        }
+        int[][] counts = new int[RATINGS][courseList.size()];
+        ReviewColumns reviewColumns = new ReviewColumns();
+        reviews.forEach(review -> {
+            Integer position = positionsById.get(review.getCourseId());
+            if (position != null && review.getRating() >= 1 && review.getRating() <= RATINGS) {
+                counts[review.getRating() - 1][position]++;
+                reviewColumns.add(review);
+            }
+        });
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(changeCount);
+            out.writeInt(courseList.size());
+            out.writeInt(reviewColumns.size);
+
+            out.writeInt(courseList.size());
+            for (Course course : courseList) {
+                out.writeInt(course.getId());
+            }
+            for (Course course : courseList) {
+                writeString(out, course.getMnemonic());
+            }
+            for (Course course : courseList) {
+                writeString(out, course.getNumber());
+            }
+            for (Course course : courseList) {
+                writeString(out, course.getTitle());
+            }
+            for (int[] column : counts) {
+                writeInts(out, column, column.length);
+            }
+
+            CoursePrefixIndex prefixIndex = CoursePrefixIndex.of(courseList);
+            String[] keys = prefixIndex.getKeys();
+            List<String> distinctKeys = new ArrayList<>();
+            List<Integer> runs = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                if (i > 0 && keys[i].equals(keys[i - 1])) {
+                    runs.set(runs.size() - 1, runs.get(runs.size() - 1) + 1);
+                } else {
+                    distinctKeys.add(keys[i]);
+                    runs.add(1);
+                }
+            }
+            out.writeInt(distinctKeys.size());
+            for (String key : distinctKeys) {
+                writeString(out, key);
+            }
+            for (int run : runs) {
+                out.writeInt(run);
+            }
+            writeInts(out, prefixIndex.getCourseIds(), keys.length);
+
+            int reviewCount = reviewColumns.size;
+            out.writeInt(reviewCount);
+            writeInts(out, reviewColumns.ids, reviewCount);
+            writeInts(out, reviewColumns.courseIds, reviewCount);
+            writeInts(out, reviewColumns.userIds, reviewCount);
+            out.write(reviewColumns.ratings, 0, reviewCount);
+            for (int i = 0; i < reviewCount; i++) {
+                out.writeLong(reviewColumns.timestamps[i]);
+            }
+            for (int i = 0; i < reviewCount; i++) {
+                writeBytes(out, reviewColumns.comments.get(i));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-maps a snapshot file and decodes its courses, ratings and search keys.
+     *
+     * @throws IOException if the file cannot be read, or is not a complete snapshot of this format version
+     */
+    public static CatalogSnapshot read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a catalog snapshot");
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a catalog snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(file + " is a version " + version + " catalog snapshot; expected version "
+                        + FORMAT_VERSION);
+            }
+            Fingerprint fingerprint = new Fingerprint(buffer.getLong(), buffer.getInt(), buffer.getInt());
+
+            int courseCount = readCount(buffer, Integer.BYTES);
+            int[] courseIds = readInts(buffer, courseCount);
+            String[] mnemonics = readStrings(buffer, courseCount);
+            String[] numbers = readStrings(buffer, courseCount);
+            String[] titles = readStrings(buffer, courseCount);
+            Course[] courses = new Course[courseCount];
+            for (int i = 0; i < courseCount; i++) {
+                courses[i] = new Course(courseIds[i], mnemonics[i], numbers[i], titles[i]);
+            }
+            int[][] ratingCounts = new int[RATINGS][];
+            for (int rating = 0; rating < RATINGS; rating++) {
+                ratingCounts[rating] = readInts(buffer, courseCount);
+            }
+
+            int distinctKeyCount = readCount(buffer, 2 * Integer.BYTES);
+            String[] distinctKeys = readStrings(buffer, distinctKeyCount);
+            int[] runs = readInts(buffer, distinctKeyCount);
+            long keyCount = 0;
+            for (int run : runs) {
+                if (run < 1) {
+                    throw new IllegalArgumentException("Every search key needs a course");
+                }
+                keyCount += run;
+            }
+            if (keyCount * Integer.BYTES > buffer.remaining()) {
+                throw new IllegalArgumentException("Search key count " + keyCount + " does not fit in the file");
+            }
+            String[] searchKeys = new String[(int) keyCount];
+            for (int i = 0, at = 0; i < distinctKeyCount; at += runs[i], i++) {
+                Arrays.fill(searchKeys, at, at + runs[i], distinctKeys[i]);
+            }
+            int[] searchCourseIds = readInts(buffer, searchKeys.length);
+
+            // Each review takes at least 3 ints, a byte, a long and a string length
+            int reviewCount = readCount(buffer, 3 * Integer.BYTES + 1 + Long.BYTES + Integer.BYTES);
+            ByteBuffer reviewColumns = buffer.slice();
+            return new CatalogSnapshot(fingerprint, List.of(courses), ratingCounts, searchKeys, searchCourseIds, reviewCount,
+                    reviewColumns);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(file + " is a truncated or corrupt catalog snapshot", e);
+        }
+    }
+
+    /**
+     * @return the state of the catalog the snapshot was taken at, to compare with
+     * {@link CourseDatabase#getCatalogFingerprint()}
+     */
+    public Fingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return every course, in CourseID order; unmodifiable
+     */
+    public List<Course> getCourses() {
+        return courses;
+    }
+
+    /**
+     * @return the rating aggregates of every course, in the order of {@link #getCourses()}
+     */
+    public List<CourseStats> getCourseStats() {
+        List<CourseStats> allStats = new ArrayList<>(courses.size());
+        for (int i = 0; i < courses.size(); i++) {
+            allStats.add(courseStats(i));
+        }
+        return allStats;
+    }
+
+    /**
+     * @return a new rating index holding every course's histogram
+     */
+    public RatingHistogramIndex toRatingIndex() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        for (int i = 0; i < courses.size(); i++) {
+            index.put(courseStats(i));
+        }
+        return index;
+    }
+
+    /**
+     * @return a new prefix index over the courses, built from the snapshot's sorted keys
+     * @throws IllegalArgumentException if the keys do not match the courses
+     */
+    public CoursePrefixIndex toPrefixIndex() {
+        return CoursePrefixIndex.ofSortedKeys(searchKeys, searchCourseIds, courses);
+    }
+
+    public int getCourseCount() {
+        return courses.size();
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    /**
+     * Decodes the reviews one at a time, in ReviewID order, straight from the mapped file.
+     */
+    public Stream<Review> streamReviews() {
+        ByteBuffer columns = reviewColumns.duplicate();
+        int courseIdsAt = reviewCount * Integer.BYTES;
+        int userIdsAt = 2 * courseIdsAt;
+        int ratingsAt = 3 * courseIdsAt;
+        int timestampsAt = ratingsAt + reviewCount;
+        columns.position(timestampsAt + reviewCount * Long.BYTES);
+        Iterator<Review> iterator = new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < reviewCount;
+            }
+
+            @Override
+            public Review next() {
+                if (next >= reviewCount) {
+                    throw new NoSuchElementException();
+                }
+                int i = next++;
+                long millis = columns.getLong(timestampsAt + i * Long.BYTES);
+                // Comments are variable-length, so they are read in order from the column's current position
+                return new Review(
+                        columns.getInt(i * Integer.BYTES),
+                        columns.getInt(courseIdsAt + i * Integer.BYTES),
+                        columns.getInt(userIdsAt + i * Integer.BYTES),
+                        columns.get(ratingsAt + i),
+                        readString(columns),
+                        millis == NULL_TIMESTAMP ? null : new Timestamp(millis));
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(iterator, reviewCount,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private CourseStats courseStats(int position) {
+        int[] counts = new int[RATINGS];
+        int reviews = 0;
+        long ratingSum = 0;
+        for (int rating = 1; rating <= RATINGS; rating++) {
+            counts[rating - 1] = ratingCounts[rating - 1][position];
+            reviews += counts[rating - 1];
+            ratingSum += (long) counts[rating - 1] * rating;
+        }
+        return new CourseStats(courses.get(position).getId(), reviews, ratingSum, counts);
+    }
+
+    /**
+     * @param minimumRowBytes the fewest bytes each row takes, to reject counts the rest of the file cannot hold
+     */
+    private static int readCount(ByteBuffer buffer, int minimumRowBytes) {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * minimumRowBytes > buffer.remaining()) {
+            throw new IllegalArgumentException("Row count " + count + " does not fit in the file");
+        }
+        return count;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int count) {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readString(buffer);
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * The review columns, grown as reviews stream in.
+     */
+    private static class ReviewColumns {
+        private int size = 0;
+        private int[] ids = new int[1024];
+        private int[] courseIds = new int[1024];
+        private int[] userIds = new int[1024];
+        private byte[] ratings = new byte[1024];
+        private long[] timestamps = new long[1024];
+        private final List<byte[]> comments = new ArrayList<>();
+
+        void add(Review review) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                courseIds = Arrays.copyOf(courseIds, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+                ratings = Arrays.copyOf(ratings, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            ids[size] = review.getId();
+            courseIds[size] = review.getCourseId();
+            userIds[size] = review.getUserId();
+            ratings[size] = (byte) review.getRating();
+            timestamps[size] = review.getTimestamp() == null ? NULL_TIMESTAMP : review.getTimestamp().getTime();
+            comments.add(review.getComment() == null ? null : review.getComment().getBytes(StandardCharsets.UTF_8));
+            size++;
+        }
+    }
+
+    /**
+     * {@code CatalogSnapshot export <database file> <snapshot file>} writes a snapshot of a database;
+     * {@code CatalogSnapshot inspect <snapshot file>} times loading one and prints what it holds.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("export")) {
+            DatabaseConnection databaseConnection = new DatabaseConnection(args[1]);
+            databaseConnection.connect();
+            try {
+                // The change counter is kept by a schema migration
+                databaseConnection.createTables();
+                long start = System.nanoTime();
+                export(Path.of(args[2]), new CourseDatabase(databaseConnection),
+                        new ReviewDatabase(databaseConnection));
+                System.out.printf("Exported %s to %s (%d bytes) in %.0f ms%n", args[1], args[2],
+                        Files.size(Path.of(args[2])), (System.nanoTime() - start) / 1e6);
+            } finally {
+                databaseConnection.disconnect();
+            }
+        } else if (args.length == 2 && args[0].equals("inspect")) {
+            long start = System.nanoTime();
+            CatalogSnapshot snapshot = read(Path.of(args[1]));
+            RatingHistogramIndex ratingIndex = snapshot.toRatingIndex();
+            CoursePrefixIndex prefixIndex = snapshot.toPrefixIndex();
+            System.out.printf("Loaded %d courses and %d reviews into %d-course indexes in %.1f ms "
+                            + "(catalog mean rating %.2f)%n", snapshot.getCourseCount(), snapshot.getReviewCount(),
+                    prefixIndex.size(), (System.nanoTime() - start) / 1e6, ratingIndex.getCatalogMean());
+            System.out.println("Fingerprint: " + snapshot.getFingerprint());
+        } else {
+            System.err.println("Usage: CatalogSnapshot export <database file> <snapshot file>");
+            System.err.println("       CatalogSnapshot inspect <snapshot file>");
+            System.exit(1);
+        }
+    }
+}
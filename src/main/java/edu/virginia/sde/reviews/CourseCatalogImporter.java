@@ -0,0 +1,277 @@
+package edu.virginia.sde.reviews;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Bulk-loads a course catalog. Rows are read one at a time, normalized and validated with the same rules as courses
+ * added in the app (fields trimmed, mnemonic upper-cased), de-duplicated in memory, and inserted {@value #BATCH_SIZE}
+ * at a time with one JDBC batch and one commit per batch. Like {@link CourseService#courseExists(Course)}, duplicates
+ * are found ignoring the case of the mnemonic and title, both within the catalog and against the database.
+ * <p>
+ * Accepted formats:
+ * <ul>
+ *     <li>CSV: {@code mnemonic,number,title} per line, with an optional header row; fields may be double-quoted</li>
+ *     <li>JSONL: one {@code {"mnemonic": ..., "number": ..., "title": ...}} object per line</li>
+ * </ul>
+ * Blank lines are ignored in both formats.
+ */
+public class CourseCatalogImporter {
+    public enum Format {
+        CSV, JSONL;
+
+        public static Format forFile(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+                return JSONL;
+            }
+            throw new IllegalArgumentException("Unknown catalog format: " + name);
+        }
+    }
+
+    public static class RejectedRow {
+        private final long lineNumber;
+        private final String reason;
+
+        public RejectedRow(long lineNumber, String reason) {
+            this.lineNumber = lineNumber;
+            this.reason = reason;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + reason;
+        }
+    }
+
+    public static class ImportReport {
+        private final long rowsRead;
+        private final long inserted;
+        private final long duplicates;
+        private final long rejected;
+        private final List<RejectedRow> rejectedRows;
+        private final long elapsedNanos;
+
+        public ImportReport(long rowsRead, long inserted, long duplicates, long rejected,
+                            List<RejectedRow> rejectedRows, long elapsedNanos) {
+            this.rowsRead = rowsRead;
+            this.inserted = inserted;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+            this.rejectedRows = List.copyOf(rejectedRows);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        /**
+         * @return rows skipped because they repeat an earlier row of the catalog or a course already in the database
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return details of the first {@value CourseCatalogImporter#MAX_REPORTED_REJECTIONS} rejected rows
+         */
+        public List<RejectedRow> getRejectedRows() {
+            return rejectedRows;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : rowsRead * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Read %d rows in %.2f s (%.0f rows/s): %d inserted, %d duplicates, %d rejected",
+                    rowsRead, elapsedNanos / 1_000_000_000.0, getRowsPerSecond(), inserted, duplicates, rejected);
+        }
+    }
+
+    private static final int BATCH_SIZE = 5000;
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+
+    private final CourseDatabase courseDatabase;
+
+    public CourseCatalogImporter(CourseDatabase courseDatabase) {
+        this.courseDatabase = courseDatabase;
+    }
+
+    public ImportReport importCourses(Reader catalog, Format format) throws IOException, SQLException {
+        long startNanos = System.nanoTime();
+        BufferedReader reader = catalog instanceof BufferedReader ? (BufferedReader) catalog : new BufferedReader(catalog);
+        Set<String> seenKeys = new HashSet<>();
+        List<Course> batch = new ArrayList<>(BATCH_SIZE);
+        List<RejectedRow> rejectedRows = new ArrayList<>();
+        long rowsRead = 0;
+        long inserted = 0;
+        long duplicates = 0;
+        long rejected = 0;
+        long lineNumber = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && format == Format.CSV && isCsvHeader(line))) {
+                continue;
+            }
+            rowsRead++;
+            Course course;
+            try {
+                course = format == Format.CSV ? parseCsvRow(line) : parseJsonRow(line);
+                CourseService.validateCourse(course);
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                if (rejectedRows.size() < MAX_REPORTED_REJECTIONS) {
+                    rejectedRows.add(new RejectedRow(lineNumber, e.getMessage()));
+                }
+                continue;
+            }
+            if (!seenKeys.add(course.getMnemonic() + " " + course.getNumber() + " " + foldCase(course.getTitle()))) {
+                duplicates++;
+                continue;
+            }
+            batch.add(course);
+            if (batch.size() == BATCH_SIZE) {
+                int batchInserted = courseDatabase.addCourses(batch);
+                inserted += batchInserted;
+                duplicates += batch.size() - batchInserted;
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            int batchInserted = courseDatabase.addCourses(batch);
+            inserted += batchInserted;
+            duplicates += batch.size() - batchInserted;
+        }
+        return new ImportReport(rowsRead, inserted, duplicates, rejected, rejectedRows, System.nanoTime() - startNanos);
+    }
+
+    private boolean isCsvHeader(String line) {
+        return line.trim().toLowerCase().startsWith("mnemonic");
+    }
+
+    private Course parseCsvRow(String line) {
+        List<String> fields = splitCsvLine(line);
+        if (fields.size() != 3) {
+            throw new IllegalArgumentException("Expected 3 fields (mnemonic,number,title) but found " + fields.size());
+        }
+        return newCourse(fields.get(0), fields.get(1), fields.get(2));
+    }
+
+    private Course parseJsonRow(String line) {
+        Map<String, Object> row = Json.parseObject(line);
+        Object mnemonic = row.get("mnemonic");
+        Object number = row.get("number");
+        Object title = row.get("title");
+        if (mnemonic == null || number == null || title == null) {
+            throw new IllegalArgumentException("Expected \"mnemonic\", \"number\" and \"title\" fields");
+        }
+        return newCourse(mnemonic.toString(), number.toString(), title.toString());
+    }
+
+    /**
+     * Normalizes the fields the way the add-course form does before they are validated.
+     */
+    private static Course newCourse(String mnemonic, String number, String title) {
+        return new Course(mnemonic.trim().toUpperCase(), number.trim(), title.trim());
+    }
+
+    /**
+     * Lower-cases ASCII letters only, as SQLite's LOWER() does, so the in-memory check agrees with the database's.
+     */
+    static String foldCase(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            folded.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        return folded.toString();
+    }
+
+    static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Imports a catalog file from the command line: {@code CourseCatalogImporter <database file> <catalog.csv|.jsonl>}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: CourseCatalogImporter <database file> <catalog.csv|catalog.jsonl>");
+            System.exit(1);
+        }
+        Path catalogFile = Path.of(args[1]);
+        DatabaseConnection databaseConnection = new DatabaseConnection(args[0]);
+        databaseConnection.connect();
+        try (Reader catalog = Files.newBufferedReader(catalogFile, StandardCharsets.UTF_8)) {
+            databaseConnection.createTables();
+            databaseConnection.commit();
+            ImportReport report = new CourseCatalogImporter(new CourseDatabase(databaseConnection))
+                    .importCourses(catalog, Format.forFile(catalogFile));
+            System.out.println(report);
+            report.getRejectedRows().forEach(System.out::println);
+        } finally {
+            databaseConnection.disconnect();
+        }
+    }
+}
@@ -2,6 +2,9 @@ package edu.virginia.sde.reviews;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.OptionalInt;
+import java.util.StringJoiner;
+import java.util.stream.Stream;
 
 public class CourseDatabase {
     private final DatabaseConnection DATABASE_CONNECTION;
@@ -10,122 +13,307 @@ public class CourseDatabase {
         this.DATABASE_CONNECTION = DATABASE_CONNECTION;
     }
 
-    public void addCourse(Course course) throws SQLException {
-        try {
-            Connection connection = DATABASE_CONNECTION.getConnection();
-            try (PreparedStatement addCourseStatement = connection.prepareStatement("""
+    /**
+     * Inserts the course and sets its id to the new CourseID, unless a course matching it case-insensitively (see
+     * {@link #courseExists(Course)}) already exists. The check and the insert are one statement, so two concurrent adds
+     * of the same course cannot both get past the check.
+     *
+     * @return false if the course already exists, in which case nothing is inserted
+     */
+    public boolean addCourse(Course course) throws SQLException {
+        OptionalInt courseId = DATABASE_CONNECTION.write("CourseDatabase.addCourse", statements -> {
+            PreparedStatement addCourseStatement = statements.prepare("""
                     INSERT INTO Courses (SubjectMnemonic, CourseNumber, Title)
-                    VALUES (?, ?, ?);
-                 """)) {
-                addCourseStatement.setString(1, course.getMnemonic());
-                addCourseStatement.setString(2, course.getNumber());
-                addCourseStatement.setString(3, course.getTitle());
-                addCourseStatement.executeUpdate();
-                DATABASE_CONNECTION.commit();
+                    SELECT ?, ?, ?
+                    WHERE NOT EXISTS (
+                        SELECT 1 FROM Courses
+                        WHERE LOWER(SubjectMnemonic) = LOWER(?) AND CourseNumber = ? AND LOWER(Title) = LOWER(?)
+                    )
+                    RETURNING CourseID;
+                 """);
+            addCourseStatement.setString(1, course.getMnemonic());
+            addCourseStatement.setString(2, course.getNumber());
+            addCourseStatement.setString(3, course.getTitle());
+            addCourseStatement.setString(4, course.getMnemonic());
+            addCourseStatement.setString(5, course.getNumber());
+            addCourseStatement.setString(6, course.getTitle());
+            try (ResultSet resultSet = addCourseStatement.executeQuery()) {
+                return resultSet.next() ? OptionalInt.of(resultSet.getInt("CourseID")) : OptionalInt.empty();
             }
-        } catch (SQLException e) {
-            DATABASE_CONNECTION.rollback();
-            throw e;
-        }
+        });
+        courseId.ifPresent(course::setId);
+        return courseId.isPresent();
+    }
+
+    /**
+     * Inserts a batch of courses with one JDBC batch in a single transaction. Courses that already exist are skipped
+     * rather than failing the batch, using the same case-insensitive match as {@link #courseExists(Course)} (served by
+     * the CoursesByFoldedKey index), so a bulk load accepts exactly the courses the app would.
+     *
+     * @return the number of courses actually inserted
+     */
+    public int addCourses(List<Course> courses) throws SQLException {
+        return DATABASE_CONNECTION.write("CourseDatabase.addCourses", statements -> {
+            PreparedStatement addCoursesStatement = statements.prepare("""
+                    INSERT INTO Courses (SubjectMnemonic, CourseNumber, Title)
+                    SELECT ?, ?, ?
+                    WHERE NOT EXISTS (
+                        SELECT 1 FROM Courses
+                        WHERE LOWER(SubjectMnemonic) = LOWER(?) AND CourseNumber = ? AND LOWER(Title) = LOWER(?)
+                    );
+                 """);
+            for (Course course : courses) {
+                addCoursesStatement.setString(1, course.getMnemonic());
+                addCoursesStatement.setString(2, course.getNumber());
+                addCoursesStatement.setString(3, course.getTitle());
+                addCoursesStatement.setString(4, course.getMnemonic());
+                addCoursesStatement.setString(5, course.getNumber());
+                addCoursesStatement.setString(6, course.getTitle());
+                addCoursesStatement.addBatch();
+            }
+            int inserted = 0;
+            for (int updateCount : addCoursesStatement.executeBatch()) {
+                if (updateCount > 0) {
+                    inserted += updateCount;
+                }
+            }
+            return inserted;
+        });
     }
 
     public Course getCourseById(int courseId) throws SQLException {
-        try {
-            Connection connection = DATABASE_CONNECTION.getConnection();
-            try (PreparedStatement getCourseStatement = connection.prepareStatement("""
+        return DATABASE_CONNECTION.read("CourseDatabase.getCourseById", statements -> {
+            PreparedStatement getCourseStatement = statements.prepare("""
                     SELECT CourseID, SubjectMnemonic, CourseNumber, Title
                     FROM Courses WHERE CourseID = ?;
-                 """)) {
-                getCourseStatement.setInt(1, courseId);
-                ResultSet resultSet = getCourseStatement.executeQuery();
-
+                 """);
+            getCourseStatement.setInt(1, courseId);
+            try (ResultSet resultSet = getCourseStatement.executeQuery()) {
                 if (resultSet.next()) {
-                    return new Course(
-                            resultSet.getInt("CourseID"),
-                            resultSet.getString("SubjectMnemonic"),
-                            resultSet.getString("CourseNumber"),
-                            resultSet.getString("Title")
-                    );
+                    return readCourse(resultSet);
                 }
             }
             return null;
-        } catch (SQLException e) {
-            throw e;
-        }
+        });
     }
 
-    public List<Course> searchCourses(String searchTerm) throws SQLException {
-        List<Course> courses = new ArrayList<>();
-        try {
-            Connection connection = DATABASE_CONNECTION.getConnection();
-            try (PreparedStatement searchCoursesStatement = connection.prepareStatement("""
-                    SELECT CourseID, SubjectMnemonic, CourseNumber, Title
-                    FROM Courses
-                    WHERE LOWER(SubjectMnemonic) LIKE LOWER(?) OR
-                          CourseNumber LIKE ? OR
-                          LOWER(Title) LIKE LOWER(?);
-                 """)) {
-                String substringSearch = "%" + searchTerm + "%";
-                searchCoursesStatement.setString(1, substringSearch);
-                searchCoursesStatement.setString(2, substringSearch);
-                searchCoursesStatement.setString(3, substringSearch);
-                ResultSet resultSet = searchCoursesStatement.executeQuery();
-
+    /**
+     * Full-text search over mnemonic, number, title and combined course code, best matches first. Every word of the
+     * search term must match the start of a word in one of those columns, so "cs 21" finds CS 2150 and "struct" finds
+     * "Data Structures".
+     *
+     * @param searchTerm free-text search term; must contain at least one letter or digit
+     * @param limit      maximum number of courses to return
+     */
+    public List<Course> searchCourses(String searchTerm, int limit) throws SQLException {
+        String matchQuery = toMatchQuery(searchTerm);
+        if (matchQuery.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return DATABASE_CONNECTION.read("CourseDatabase.searchCourses", statements -> {
+            List<Course> courses = new ArrayList<>();
+            PreparedStatement searchCoursesStatement = statements.prepare("""
+                    SELECT c.CourseID, c.SubjectMnemonic, c.CourseNumber, c.Title
+                    FROM CourseSearchIndex
+                    JOIN Courses c ON c.CourseID = CourseSearchIndex.rowid
+                    WHERE CourseSearchIndex MATCH ?
+                    ORDER BY bm25(CourseSearchIndex, 10.0, 10.0, 1.0, 10.0), c.CourseID
+                    LIMIT ?;
+                 """);
+            searchCoursesStatement.setString(1, matchQuery);
+            searchCoursesStatement.setInt(2, limit);
+            try (ResultSet resultSet = searchCoursesStatement.executeQuery()) {
                 while (resultSet.next()) {
-                    courses.add(new Course(
-                            resultSet.getInt("CourseID"),
-                            resultSet.getString("SubjectMnemonic"),
-                            resultSet.getString("CourseNumber"),
-                            resultSet.getString("Title")
-                    ));
+                    courses.add(readCourse(resultSet));
                 }
             }
-        } catch (SQLException e) {
-            throw e;
+            return courses;
+        });
+    }
+
+    /**
+     * Turns free text into an FTS5 query that ANDs a quoted prefix match for every word, so user input can never be
+     * parsed as FTS5 syntax. Returns "" if the text has no letters or digits.
+     */
+    static String toMatchQuery(String searchTerm) {
+        StringJoiner matchQuery = new StringJoiner(" ");
+        for (String token : searchTerm.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                matchQuery.add("\"" + token + "\"*");
+            }
         }
-        return courses;
+        return matchQuery.toString();
     }
 
     public List<Course> getAllCourses() throws SQLException {
-        List<Course> courses = new ArrayList<>();
-        try {
-            Connection connection = DATABASE_CONNECTION.getConnection();
-            try (PreparedStatement getAllCoursesStatement = connection.prepareStatement("""
+        return DATABASE_CONNECTION.read("CourseDatabase.getAllCourses", statements -> {
+            List<Course> courses = new ArrayList<>();
+            PreparedStatement getAllCoursesStatement = statements.prepare("""
                     SELECT CourseID, SubjectMnemonic, CourseNumber, Title
                     FROM Courses;
-                 """)) {
-                ResultSet resultSet = getAllCoursesStatement.executeQuery();
+                 """);
+            try (ResultSet resultSet = getAllCoursesStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    courses.add(readCourse(resultSet));
+                }
+            }
+            return courses;
+        });
+    }
+
+    /**
+     * Every course in CourseID order, read lazily; close the stream (try-with-resources) when done.
+     */
+    public Stream<Course> streamAllCourses() throws SQLException {
+        return DATABASE_CONNECTION.stream("CourseDatabase.streamAllCourses", statements -> statements.prepare("""
+                    SELECT CourseID, SubjectMnemonic, CourseNumber, Title
+                    FROM Courses ORDER BY CourseID;
+                 """).executeQuery(), this::readCourse);
+    }
+
+    /**
+     * Every course matching the search term, best matches first, read lazily; see
+     * {@link #searchCourses(String, int)} for how terms match. Close the stream (try-with-resources) when done.
+     */
+    public Stream<Course> streamSearchCourses(String searchTerm) throws SQLException {
+        String matchQuery = toMatchQuery(searchTerm);
+        if (matchQuery.isEmpty()) {
+            return Stream.empty();
+        }
+        return DATABASE_CONNECTION.stream("CourseDatabase.streamSearchCourses", statements -> {
+            PreparedStatement searchCoursesStatement = statements.prepare("""
+                    SELECT c.CourseID, c.SubjectMnemonic, c.CourseNumber, c.Title
+                    FROM CourseSearchIndex
+                    JOIN Courses c ON c.CourseID = CourseSearchIndex.rowid
+                    WHERE CourseSearchIndex MATCH ?
+                    ORDER BY bm25(CourseSearchIndex, 10.0, 10.0, 1.0, 10.0), c.CourseID;
+                 """);
+            searchCoursesStatement.setString(1, matchQuery);
+            return searchCoursesStatement.executeQuery();
+        }, this::readCourse);
+    }
 
+    /**
+     * Keyset-paginated course listing in CourseID order.
+     *
+     * @param afterCourseId only courses with a larger id are returned; pass 0 for the first page
+     * @param limit         page size
+     */
+    public List<Course> getCoursesPage(int afterCourseId, int limit) throws SQLException {
+        return DATABASE_CONNECTION.read("CourseDatabase.getCoursesPage", statements -> {
+            List<Course> courses = new ArrayList<>();
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT CourseID, SubjectMnemonic, CourseNumber, Title
+                    FROM Courses
+                    WHERE CourseID > ?
+                    ORDER BY CourseID
+                    LIMIT ?;
+                 """);
+            stmt.setInt(1, afterCourseId);
+            stmt.setInt(2, limit);
+            try (ResultSet resultSet = stmt.executeQuery()) {
                 while (resultSet.next()) {
-                    courses.add(new Course(
-                            resultSet.getInt("CourseID"),
-                            resultSet.getString("SubjectMnemonic"),
-                            resultSet.getString("CourseNumber"),
-                            resultSet.getString("Title")
-                    ));
+                    courses.add(readCourse(resultSet));
                 }
             }
-        } catch (SQLException e) {
-            throw e;
+            return courses;
+        });
+    }
+
+    /**
+     * Keyset-paginated search results in CourseID order rather than by relevance, so that a walk over every match can
+     * release its connection between pages; see {@link #searchCourses(String, int)} for how terms match.
+     *
+     * @param afterCourseId only courses with a larger id are returned; pass 0 for the first page
+     * @param limit         page size
+     */
+    public List<Course> searchCoursesPage(String searchTerm, int afterCourseId, int limit) throws SQLException {
+        String matchQuery = toMatchQuery(searchTerm);
+        if (matchQuery.isEmpty()) {
+            return new ArrayList<>();
         }
-        return courses;
+        return DATABASE_CONNECTION.read("CourseDatabase.searchCoursesPage", statements -> {
+            List<Course> courses = new ArrayList<>();
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT c.CourseID, c.SubjectMnemonic, c.CourseNumber, c.Title
+                    FROM CourseSearchIndex
+                    JOIN Courses c ON c.CourseID = CourseSearchIndex.rowid
+                    WHERE CourseSearchIndex MATCH ? AND CourseSearchIndex.rowid > ?
+                    ORDER BY CourseSearchIndex.rowid
+                    LIMIT ?;
+                 """);
+            stmt.setString(1, matchQuery);
+            stmt.setInt(2, afterCourseId);
+            stmt.setInt(3, limit);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    courses.add(readCourse(resultSet));
+                }
+            }
+            return courses;
+        });
     }
 
     public boolean courseExists(Course course) throws SQLException {
-        Connection connection = DATABASE_CONNECTION.getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                SELECT COUNT(*) FROM Courses
-                WHERE LOWER(SubjectMnemonic) = LOWER(?) AND CourseNumber = ? AND LOWER(Title) = LOWER(?);
-            """)){
+        return DATABASE_CONNECTION.read("CourseDatabase.courseExists", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT COUNT(*) FROM Courses
+                    WHERE LOWER(SubjectMnemonic) = LOWER(?) AND CourseNumber = ? AND LOWER(Title) = LOWER(?);
+                """);
             stmt.setString(1, course.getMnemonic());
             stmt.setString(2, course.getNumber());
             stmt.setString(3, course.getTitle());
 
-            ResultSet resultSet = stmt.executeQuery();
-            if (resultSet.next()) {
-                return resultSet.getInt(1) > 0;
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getInt(1) > 0;
+                }
             }
-        }
-        return false;
+            return false;
+        });
+    }
+
+    /**
+     * @return the catalog's change counter, which triggers bump in the same transaction as every insert, update and
+     * delete of a course or review, so it differs whenever anything a snapshot holds may have changed
+     */
+    public long getCatalogChangeCount() throws SQLException {
+        return DATABASE_CONNECTION.read("CourseDatabase.getCatalogChangeCount", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT ChangeCount FROM CatalogChanges WHERE ID = 1;
+                 """);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong("ChangeCount") : 0;
+            }
+        });
+    }
+
+    /**
+     * Reads the database's side of {@link CatalogSnapshot.Fingerprint} in one query. Every figure comes from the
+     * change counter's single row, a table count or the per-course CourseStats rows, so this stays cheap however many
+     * reviews there are.
+     */
+    public CatalogSnapshot.Fingerprint getCatalogFingerprint() throws SQLException {
+        return DATABASE_CONNECTION.read("CourseDatabase.getCatalogFingerprint", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT (SELECT COALESCE(MAX(ChangeCount), 0) FROM CatalogChanges) AS ChangeCount,
+                           (SELECT COUNT(*) FROM Courses) AS CourseCount,
+                           (SELECT COALESCE(SUM(ReviewCount), 0) FROM CourseStats) AS ReviewCount;
+                 """);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                resultSet.next();
+                return new CatalogSnapshot.Fingerprint(resultSet.getLong("ChangeCount"),
+                        resultSet.getInt("CourseCount"), resultSet.getInt("ReviewCount"));
+            }
+        });
+    }
+
+    private Course readCourse(ResultSet resultSet) throws SQLException {
+        return new Course(
+                resultSet.getInt("CourseID"),
+                resultSet.getString("SubjectMnemonic"),
+                resultSet.getString("CourseNumber"),
+                resultSet.getString("Title")
+        );
     }
 }
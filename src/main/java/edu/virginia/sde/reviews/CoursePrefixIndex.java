@@ -0,0 +1,297 @@
+package edu.virginia.sde.reviews;
+
+import java.util.*;
+
+/**
+ * An immutable in-memory prefix index for search-as-you-type over the course catalog.
+ * <p>
+ * Every course is filed under a handful of normalized (upper-case, letters and digits only) keys: its mnemonic, its
+ * number, its compact code ("CS2150") and each word of its title. The keys live in one sorted {@code String[]} with a
+ * parallel {@code int[]} of CourseIDs, so finding every key that starts with a prefix is two binary searches. A query
+ * of several words ("cs 21", "data struct") matches the courses that have a key starting with each word; it is driven
+ * by the word with the fewest matching keys and checks the others against each candidate's own keys.
+ * <p>
+ * Adding a course returns a new index (copy-on-write), so readers never lock and always see a consistent catalog.
+ */
+public class CoursePrefixIndex {
+    private static final CoursePrefixIndex EMPTY = new CoursePrefixIndex(new String[0], new int[0], Map.of());
+
+    /**
+     * A course with its keys, which are kept so candidates can be checked against the other query words cheaply.
+     */
+    private static class IndexedCourse {
+        private final Course course;
+        private final String[] keys;
+
+        IndexedCourse(Course course) {
+            this(course, keysOf(course).toArray(new String[0]));
+        }
+
+        IndexedCourse(Course course, String[] keys) {
+            this.course = course;
+            this.keys = keys;
+        }
+
+        boolean hasKeyStartingWith(String prefix) {
+            for (String key : keys) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final String[] keys;
+    private final int[] courseIds;
+    private final Map<Integer, IndexedCourse> coursesById;
+
+    private CoursePrefixIndex(String[] keys, int[] courseIds, Map<Integer, IndexedCourse> coursesById) {
+        this.keys = keys;
+        this.courseIds = courseIds;
+        this.coursesById = coursesById;
+    }
+
+    public static CoursePrefixIndex empty() {
+        return EMPTY;
+    }
+
+    public static CoursePrefixIndex of(Collection<Course> courses) {
+        List<Entry> entries = new ArrayList<>();
+        Map<Integer, IndexedCourse> coursesById = new HashMap<>();
+        for (Course course : courses) {
+            IndexedCourse indexed = new IndexedCourse(course);
+            if (coursesById.putIfAbsent(course.getId(), indexed) == null) {
+                for (String key : indexed.keys) {
+                    entries.add(new Entry(key, course.getId()));
+                }
+            }
+        }
+        entries.sort(null);
+        String[] keys = new String[entries.size()];
+        int[] courseIds = new int[entries.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = entries.get(i).key;
+            courseIds[i] = entries.get(i).courseId;
+        }
+        return new CoursePrefixIndex(keys, courseIds, coursesById);
+    }
+
+    /**
+     * Rebuilds an index from the sorted key and course id columns of another one (see {@link #getKeys()} and
+     * {@link #getCourseIds()}), skipping the sort that {@link #of(Collection)} does.
+     *
+     * @throws IllegalArgumentException if the columns differ in length or refer to a course that is not given
+     */
+    static CoursePrefixIndex ofSortedKeys(String[] keys, int[] courseIds, Collection<Course> courses) {
+        if (keys.length != courseIds.length) {
+            throw new IllegalArgumentException("Every key needs exactly one course id");
+        }
+        Map<Integer, List<String>> keysById = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            keysById.computeIfAbsent(courseIds[i], id -> new ArrayList<>(6)).add(keys[i]);
+        }
+        Map<Integer, IndexedCourse> coursesById = new HashMap<>();
+        for (Course course : courses) {
+            List<String> courseKeys = keysById.remove(course.getId());
+            coursesById.putIfAbsent(course.getId(), new IndexedCourse(course,
+                    courseKeys == null ? new String[0] : courseKeys.toArray(new String[0])));
+        }
+        if (!keysById.isEmpty()) {
+            throw new IllegalArgumentException("Keys refer to courses that are not in the index");
+        }
+        return new CoursePrefixIndex(keys, courseIds, coursesById);
+    }
+
+    /**
+     * @return the index's keys in sorted order; not to be modified
+     */
+    String[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return the CourseID of each key in {@link #getKeys()}; not to be modified
+     */
+    int[] getCourseIds() {
+        return courseIds;
+    }
+
+    /**
+     * @return an index that also holds the course; this index if it already holds a course with that id
+     */
+    public CoursePrefixIndex withCourse(Course course) {
+        if (coursesById.containsKey(course.getId())) {
+            return this;
+        }
+        IndexedCourse indexed = new IndexedCourse(course);
+        String[] newKeys = indexed.keys.clone();
+        Arrays.sort(newKeys);
+        String[] mergedKeys = new String[keys.length + newKeys.length];
+        int[] mergedIds = new int[mergedKeys.length];
+        int from = 0;
+        int to = 0;
+        for (String key : newKeys) {
+            // Entries are ordered by key, then by course id, and the new course may share keys with old ones
+            int insertAt = insertionPoint(key, course.getId());
+            int copied = insertAt - from;
+            System.arraycopy(keys, from, mergedKeys, to, copied);
+            System.arraycopy(courseIds, from, mergedIds, to, copied);
+            to += copied;
+            from = insertAt;
+            mergedKeys[to] = key;
+            mergedIds[to] = course.getId();
+            to++;
+        }
+        System.arraycopy(keys, from, mergedKeys, to, keys.length - from);
+        System.arraycopy(courseIds, from, mergedIds, to, keys.length - from);
+        Map<Integer, IndexedCourse> mergedCourses = new HashMap<>(coursesById);
+        mergedCourses.put(course.getId(), indexed);
+        return new CoursePrefixIndex(mergedKeys, mergedIds, mergedCourses);
+    }
+
+    /**
+     * @return up to {@code limit} courses matching every word of the query, in order of their best-matching key; empty
+     * if the query has no letters or digits
+     */
+    public List<Course> search(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        // Drive the search from the most selective word
+        int bestFrom = 0;
+        int bestTo = keys.length;
+        String driver = null;
+        for (String token : tokens) {
+            int from = lowerBound(token);
+            int to = lowerBound(token + Character.MAX_VALUE);
+            if (driver == null || to - from < bestTo - bestFrom) {
+                driver = token;
+                bestFrom = from;
+                bestTo = to;
+            }
+        }
+        List<String> others = new ArrayList<>(tokens);
+        others.remove(driver);
+
+        List<Course> matches = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int i = bestFrom; i < bestTo && matches.size() < limit; i++) {
+            int courseId = courseIds[i];
+            if (!seen.add(courseId)) {
+                continue;
+            }
+            IndexedCourse candidate = coursesById.get(courseId);
+            if (matchesAll(candidate, others)) {
+                matches.add(candidate.course);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the number of courses in the index
+     */
+    public int size() {
+        return coursesById.size();
+    }
+
+    private static boolean matchesAll(IndexedCourse candidate, List<String> tokens) {
+        for (String token : tokens) {
+            if (!candidate.hasKeyStartingWith(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the position of the first key that is not less than {@code key}
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return where an entry (key, courseId) belongs among the existing entries
+     */
+    private int insertionPoint(String key, int courseId) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int byKey = keys[mid].compareTo(key);
+            if (byKey < 0 || (byKey == 0 && courseIds[mid] < courseId)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static List<String> keysOf(Course course) {
+        String mnemonic = normalize(course.getMnemonic());
+        String number = normalize(course.getNumber());
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(mnemonic);
+        keys.add(number);
+        keys.add(mnemonic + number);
+        keys.addAll(tokenize(course.getTitle()));
+        keys.remove("");
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * Splits text into upper-case runs of letters and digits. Hand-rolled rather than a regex split, as it runs for
+     * every course when the index is built.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                tokens.add(text.substring(start, i).toUpperCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : String.join("", tokenize(text));
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final String key;
+        private final int courseId;
+
+        Entry(String key, int courseId) {
+            this.key = key;
+            this.courseId = courseId;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : Integer.compare(courseId, other.courseId);
+        }
+    }
+}
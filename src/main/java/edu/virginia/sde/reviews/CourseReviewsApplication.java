@@ -1,15 +1,35 @@
 package edu.virginia.sde.reviews;
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Scene;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
-import java.sql.SQLException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
+/**
+ * Starts in stages so that the login screen shows as soon as the toolkit is up: opening and migrating the database,
+ * warming the catalog and rating indexes and parsing the other screens into the {@link Navigator} all happen in the
+ * background, and login is enabled once the database is ready. A {@link StartupReport} of every phase is printed
+ * when startup finishes.
+ */
 public class CourseReviewsApplication extends Application {
+    private static final String DATABASE_FILE = "appDatabase.db";
+    // A catalog snapshot to warm the indexes from instead of the database, e.g. -Dreviews.snapshot=catalog.snap
+    private static final String SNAPSHOT_PROPERTY = "reviews.snapshot";
 
+    private final StartupReport startupReport = new StartupReport();
     private DatabaseConnection databaseConnection;
+    private CompletableFuture<Void> databaseOpened;
+    // The last of the startup stages that use the database; it only completes once all of them have. The screen
+    // preloads are not among them: they never touch the database, and stop() could not wait for them anyway, as
+    // they finish on the JavaFX thread that stop() runs on
+    private CompletableFuture<Void> databaseStartup;
 
     public static void main(String[] args) {
         launch(args);
@@ -17,40 +37,136 @@ public class CourseReviewsApplication extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        databaseConnection = new DatabaseConnection("appDatabase.db");
-        databaseConnection.connect();
+        startupReport.recordLaunch("launch");
+        Executor executor = DatabaseExecutor.shared();
 
-        try {
-            databaseConnection.createTables();
+        // None of these touch the database until they are used
+        databaseConnection = new DatabaseConnection(DATABASE_FILE);
+        var userService = new UserService(new UserDatabase(databaseConnection));
+        var reviewService = new ReviewService(new ReviewDatabase(databaseConnection));
+        var courseService = new CourseService(new CourseDatabase(databaseConnection), reviewService);
+        var navigator = new Navigator(primaryStage, userService, courseService, reviewService);
+
+        databaseOpened = CompletableFuture.runAsync(timed("open database", () -> {
+            databaseConnection.connect();
+            return null;
+        }), executor);
+        databaseStartup = databaseOpened;
+        CompletableFuture<Void> databaseReady = databaseOpened.thenRun(timed("migrate schema", () -> {
+            List<SchemaMigrator.Migration> applied = databaseConnection.createTables();
             databaseConnection.commit();
-        } catch (SQLException e) {
-            throw new RuntimeException("Error while building the database", e);
-        }
+            return applied;
+        }));
+        CompletableFuture<Void> warmedUp = databaseReady.thenCompose(ready ->
+                warmUp(courseService, reviewService, executor));
+        databaseStartup = warmedUp;
+        // The other screens are parsed in the background and installed in the navigator on the JavaFX thread, so
+        // that even the first visit to each is instant
+        CompletableFuture<Void> viewsPreloaded = CompletableFuture.allOf(Navigator.SCREENS_AFTER_LOGIN.stream()
+                .map(screen -> CompletableFuture.supplyAsync(
+                                timedValue("preload " + screen, () -> navigator.parse(screen)), executor)
+                        .thenAcceptAsync(navigator::install, Platform::runLater))
+                .toArray(CompletableFuture[]::new));
+
+        startupReport.time("show login", () -> {
+            navigator.getController(Navigator.Screen.LOGIN).setDatabaseReady(databaseReady);
+            primaryStage.setTitle("Course Reviews");
+            primaryStage.setWidth(1280);
+            primaryStage.setHeight(720);
+            navigator.showLogin();
+            return null;
+        });
+        // Runs once the FX thread is free again, i.e. after the window's first pulse
+        Platform.runLater(() -> startupReport.mark("first frame"));
 
-        var userDatabase = new UserDatabase(databaseConnection);
-        var courseDatabase = new CourseDatabase(databaseConnection);
-        var reviewDatabase = new ReviewDatabase(databaseConnection);
+        CompletableFuture.allOf(warmedUp, viewsPreloaded).whenComplete((result, error) -> {
+            startupReport.mark("startup complete");
+            System.out.print(startupReport);
+            if (error != null) {
+                System.err.println("Startup failed: " + rootCause(error));
+            }
+        });
+    }
+
+    /**
+     * Fills the catalog and rating indexes, from a snapshot if one is configured and still matches the database, and
+     * otherwise from the database with the two database scans in parallel.
+     */
+    private CompletableFuture<Void> warmUp(CourseService courseService, ReviewService reviewService,
+                                           Executor executor) {
+        String snapshotFile = System.getProperty(SNAPSHOT_PROPERTY);
+        if (snapshotFile == null) {
+            return warmUpFromDatabase(courseService, reviewService, executor);
+        }
+        return CompletableFuture.supplyAsync(timedValue("load catalog snapshot",
+                        () -> courseService.loadSnapshot(CatalogSnapshot.read(Path.of(snapshotFile)))), executor)
+                .thenCompose(loaded -> {
+                    if (loaded) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    System.err.println("Catalog snapshot " + snapshotFile + " no longer matches the database; "
+                            + "loading the catalog from the database instead");
+                    return warmUpFromDatabase(courseService, reviewService, executor);
+                });
+    }
 
-        var userService = new UserService(userDatabase);
-        var courseService = new CourseService(courseDatabase);
-        var reviewService = new ReviewService(reviewDatabase);
+    private CompletableFuture<Void> warmUpFromDatabase(CourseService courseService, ReviewService reviewService,
+                                                       Executor executor) {
+        return CompletableFuture.allOf(
+                CompletableFuture.runAsync(timed("load course catalog", () -> {
+                    courseService.warmUp();
+                    return null;
+                }), executor),
+                CompletableFuture.runAsync(timed("load rating index", reviewService::getRatingIndex), executor));
+    }
 
-        var fxmlLoader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/login.fxml"));
-        var scene = new Scene(fxmlLoader.load(), 1280, 720);
+    /**
+     * @return the step as a task that records its time in the startup report
+     */
+    private Runnable timed(String phase, StartupReport.Step<?> step) {
+        Supplier<?> timed = timedValue(phase, step);
+        return timed::get;
+    }
 
-        var controller = (LoginController) fxmlLoader.getController();
-        controller.setPrimaryStage(primaryStage);
-        controller.setServices(userService, courseService, reviewService);
+    /**
+     * @return the step as a task that records its time in the startup report and returns the step's result
+     */
+    private <T> Supplier<T> timedValue(String phase, StartupReport.Step<T> step) {
+        return () -> {
+            try {
+                return startupReport.time(phase, step);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(phase + " failed", e);
+            }
+        };
+    }
 
-        primaryStage.setTitle("Course Reviews");
-        primaryStage.setWidth(1280);
-        primaryStage.setHeight(720);
-        primaryStage.setScene(scene);
-        primaryStage.show();
+    private static Throwable rootCause(Throwable error) {
+        while (error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
     }
 
     @Override
     public void stop() throws Exception {
+        if (databaseOpened == null) {
+            super.stop();
+            return; // start() failed before opening it
+        }
+        try {
+            // The database may still be opening, migrating or warming the indexes; wait for all of it, so that it is
+            // closed rather than left half open, and no startup stage has the connection closed under it
+            databaseStartup.join();
+        } catch (CompletionException | CancellationException e) {
+            // Reported when startup finished; what matters here is whether there is a connection to close
+        }
+        if (databaseOpened.isCompletedExceptionally()) {
+            super.stop();
+            return; // it never opened, and connect() closed what it had opened
+        }
         databaseConnection.disconnect();
         super.stop();
     }
@@ -1,23 +1,22 @@
 package edu.virginia.sde.reviews;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
-import javafx.stage.Stage;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public class CourseReviewsController {
+public class CourseReviewsController implements ScreenController {
+    private static final int PAGE_SIZE = 50;
 
     @FXML
     private Label messageLabel;
@@ -69,27 +68,56 @@ public class CourseReviewsController {
     private UserService userService;
     private CourseService courseService;
     private ReviewService reviewService;
-    private Stage primaryStage;
+    private Navigator navigator;
     private int courseId;
+    // Created by the first refresh, on the JavaFX thread, which initialize() may not run on
+    private PagedTableLoader<Review> reviewLoader;
 
-    // This is only true when user is updating their code
-    private boolean isUpdating = false;
+    // The user's review that the review box is editing, or null when it is writing a new one
+    private Review editingReview;
 
+    @Override
     public void setServices(UserService userService, CourseService courseService, ReviewService reviewService) {
         this.userService = userService;
         this.courseService = courseService;
         this.reviewService = reviewService;
-        loadReviews();
     }
 
-    public void setPrimaryStage(Stage primaryStage) {
-        this.primaryStage = primaryStage;
+    @Override
+    public void setNavigator(Navigator navigator) {
+        this.navigator = navigator;
     }
 
+    /**
+     * Sets the course that the next {@link #refresh()} shows.
+     */
     public void setCourseId(int courseId) {
         this.courseId = courseId;
     }
 
+    /**
+     * Clears what the last course left on the screen (its name, messages and any half-written review) and loads the
+     * current course.
+     */
+    @Override
+    public void refresh() {
+        if (reviewLoader == null) {
+            reviewLoader = new PagedTableLoader<>(reviewsTable, PAGE_SIZE,
+                    (lastReview, pageSize) -> reviewService.getReviewsForCoursePageAsync(courseId, lastReview,
+                            pageSize),
+                    e -> showError("Failed to load reviews. Please try again."));
+        }
+        handleCancelReview();
+        messageLabel.setText("");
+        courseNameLabel.setText("");
+        courseAverageLabel.setText("");
+        editReviewButton.setVisible(false);
+        editReviewButton.setManaged(false);
+        deleteReviewButton.setVisible(false);
+        deleteReviewButton.setManaged(false);
+        loadReviews();
+    }
+
     @FXML
     private void initialize() {
         ratingColumn.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().getRating()));
@@ -134,65 +162,121 @@ public class CourseReviewsController {
 
     @FXML
     private void loadReviews() {
-        try {
-            List<Review> reviews = reviewService.getReviewsForCourse(courseId);
-            reviewsTable.setItems(FXCollections.observableList(reviews));
-
-            Optional<Course> course = courseService.getCourseById(courseId);
-            if (course.isPresent()) {
-                double averageRating = reviewService.getAverageRatingForCourse(courseId);
-                courseNameLabel.setText(course.get().getMnemonic() + " " + course.get().getNumber() + ": " + course.get().getTitle());
-                courseAverageLabel.setText(String.format("Course Average: %.2f", averageRating));
-            }
+        reviewLoader.reload();
+
+        int requestedCourseId = courseId;
+        CompletableFuture<Optional<Course>> courseFuture = courseService.getCourseByIdAsync(courseId);
+        CompletableFuture<CourseStats> statsFuture = reviewService.getCourseStatsAsync(courseId);
+        CompletableFuture<Optional<Review>> userReviewFuture =
+                reviewService.getUserReviewForCourseAsync(userService.getCurrentUser().getId(), courseId);
+
+        CompletableFuture.allOf(courseFuture, statsFuture, userReviewFuture)
+                .thenRunAsync(() -> {
+                    // The screen is reused, so it may have moved on to another course while these loaded
+                    if (requestedCourseId == courseId) {
+                        showCourseDetails(courseFuture.join(), statsFuture.join(), userReviewFuture.join().isPresent());
+                    }
+                }, Platform::runLater)
+                .exceptionally(e -> {
+                    Platform.runLater(() -> {
+                        if (requestedCourseId == courseId) {
+                            showError("Failed to load reviews. Please try again.");
+                        }
+                    });
+                    return null;
+                });
+    }
 
-            boolean hasUserReview = reviews.stream()
-                    .anyMatch(review -> review.getUserId() == userService.getCurrentUser().getId());
+    private void showCourseDetails(Optional<Course> course, CourseStats stats, boolean hasUserReview) {
+        if (course.isPresent()) {
+            courseNameLabel.setText(course.get().getMnemonic() + " " + course.get().getNumber() + ": " + course.get().getTitle());
+            courseAverageLabel.setText(String.format("Course Average: %.2f", stats.getAverageRating()));
+        }
 
-            // Add Review Button is always visible
-            addReviewButton.setVisible(true);
-            addReviewButton.setManaged(true);
+        // Add Review Button is always visible
+        addReviewButton.setVisible(true);
+        addReviewButton.setManaged(true);
 
-            // Edit and Delete Review Button is only visible when User has a review
-            editReviewButton.setVisible(hasUserReview);
-            editReviewButton.setManaged(hasUserReview);
-            deleteReviewButton.setVisible(hasUserReview);
-            deleteReviewButton.setManaged(hasUserReview);
-        } catch (Exception e) {
-            showError("Failed to load reviews. Please try again.");
-        }
+        // Edit and Delete Review Button is only visible when User has a review
+        editReviewButton.setVisible(hasUserReview);
+        editReviewButton.setManaged(hasUserReview);
+        deleteReviewButton.setVisible(hasUserReview);
+        deleteReviewButton.setManaged(hasUserReview);
+    }
+
+    /**
+     * Looks up the current user's review of this course in the background and hands it to the action on the JavaFX
+     * thread.
+     */
+    private void withUserReview(Consumer<Optional<Review>> action) {
+        whenDone(reviewService.getUserReviewForCourseAsync(userService.getCurrentUser().getId(), courseId), action,
+                "Failed to load your review. Please try again.");
+    }
+
+    /**
+     * Runs the action on the JavaFX thread once the background work completes, or shows the failure message if it
+     * fails; neither happens if the screen has moved on to another course by then.
+     */
+    private <T> void whenDone(CompletableFuture<T> work, Consumer<T> action, String failureMessage) {
+        int requestedCourseId = courseId;
+        work.thenAcceptAsync(value -> {
+                    if (requestedCourseId == courseId) {
+                        action.accept(value);
+                    }
+                }, Platform::runLater)
+                .exceptionally(e -> {
+                    Platform.runLater(() -> {
+                        if (requestedCourseId == courseId) {
+                            showError(failureMessage);
+                        }
+                    });
+                    return null;
+                });
+    }
+
+    /**
+     * Shows how a review write made in the background turned out and reloads the course's reviews.
+     */
+    private void afterWrite(CompletableFuture<WriteResult> write, String successMessage, String failureMessage) {
+        whenDone(write, result -> {
+            Optional<String> error = result.getError();
+            if (error.isPresent()) {
+                showError(error.get());
+            } else {
+                showSuccess(successMessage);
+                // Once the user's review is saved, close the review box
+                toggleReviewBox(false, "");
+            }
+            loadReviews();
+        }, failureMessage);
     }
 
     @FXML
     private void handleAddReview() {
-        Optional<Review> userReview = reviewService.getReviewsForCourse(courseId).stream()
-                .filter(review -> review.getUserId() == userService.getCurrentUser().getId())
-                .findFirst();
-
-        if (userReview.isPresent()) {
-            showError("You already have a review for this course. You can only edit your review instead.");
-        } else {
-            isUpdating = false;
-            toggleReviewBox(true, "Submit Review");
-            commentTextArea.clear();
-            ratingField.clear();
-        }
+        withUserReview(userReview -> {
+            if (userReview.isPresent()) {
+                showError("You already have a review for this course. You can only edit your review instead.");
+            } else {
+                editingReview = null;
+                toggleReviewBox(true, "Submit Review");
+                commentTextArea.clear();
+                ratingField.clear();
+            }
+        });
     }
 
     @FXML
     private void handleEditReview() {
-        Optional<Review> userReview = reviewService.getReviewsForCourse(courseId).stream()
-                .filter(review -> review.getUserId() == userService.getCurrentUser().getId())
-                .findFirst();
-
-        if (userReview.isPresent()) {
-            isUpdating = true;
-            Review review = userReview.get();
-            ratingField.setText(String.valueOf(review.getRating()));
-            commentTextArea.setText(review.getComment());
-            toggleReviewBox(true, "Update Review");
-        } else {
-            showError("No review found to edit.");
-        }
+        withUserReview(userReview -> {
+            if (userReview.isPresent()) {
+                editingReview = userReview.get();
+                ratingField.setText(String.valueOf(editingReview.getRating()));
+                commentTextArea.setText(editingReview.getComment());
+                toggleReviewBox(true, "Update Review");
+            } else {
+                showError("No review found to edit.");
+            }
+        });
     }
 
     @FXML
@@ -204,26 +288,14 @@ public class CourseReviewsController {
 
         Optional<ButtonType> result = confirmAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try {
-                Optional<Review> userReview = reviewService.getReviewsForCourse(courseId).stream()
-                        .filter(review -> review.getUserId() == userService.getCurrentUser().getId())
-                        .findFirst();
-
+            withUserReview(userReview -> {
                 if (userReview.isEmpty()) {
                     showError("No review found to delete.");
                     return;
                 }
-
-                Optional<String> deleteResult = reviewService.deleteReview(userReview.get().getId());
-                if (deleteResult.isPresent()) {
-                    showError(deleteResult.get());
-                } else {
-                    showSuccess("Review deleted successfully!");
-                    loadReviews(); // Reload the reviews table
-                }
-            } catch (Exception e) {
-                showError("An error occurred while deleting the review.");
-            }
+                afterWrite(reviewService.deleteReviewAsync(userReview.get().getId()),
+                        "Review deleted successfully!", "An error occurred while deleting the review.");
+            });
         }
     }
 
@@ -238,51 +310,32 @@ public class CourseReviewsController {
             return;
         }
 
+        int rating;
         try {
-            int rating = Integer.parseInt(ratingInput);
-            Timestamp currentTimestamp = new Timestamp(System.currentTimeMillis());
-
-            if (isUpdating) {
-                Optional<Review> userReview = reviewService.getReviewsForCourse(courseId).stream()
-                        .filter(review -> review.getUserId() == userService.getCurrentUser().getId())
-                        .findFirst();
-
-                if (userReview.isPresent()) {
-                    Review updatedReview = userReview.get();
-                    updatedReview.setRating(rating);
-                    updatedReview.setComment(comment);
-                    updatedReview.setTimestamp(currentTimestamp);
-                    Optional<String> result = reviewService.updateReview(updatedReview);
-                    if(!result.isPresent()) {
-                        showSuccess("Review updated successfully!");
-                        // Once the user successfully updates the review, disable the Review Box
-                        toggleReviewBox(false, "");
-                    }else{
-                        showError(result.get());
-                    }
-                } else {
-                    showError("No review found to update.");
-                    toggleReviewBox(false, "");
-                }
-            } else {
-                Review newReview = new Review(courseId, userService.getCurrentUser().getId(), rating, comment, currentTimestamp);
-                Optional<String> result =  reviewService.createReview(newReview);
-                if(!result.isPresent()) {
-                    showSuccess("Review added successfully!");
-                    // Once the user successfully adds the review, disable the Review Box
-                    toggleReviewBox(false, "");
-                }else{
-                    showError(result.get());
-                }
-            }
-
-
-            loadReviews();
+            rating = Integer.parseInt(ratingInput);
         } catch (NumberFormatException e) {
             showError("Rating must be a valid integer number.");
-        } catch (Exception e) {
-            showError("An error occurred while updating the review.");
+            return;
+        }
+        Timestamp currentTimestamp = new Timestamp(System.currentTimeMillis());
+
+        CompletableFuture<WriteResult> write;
+        if (editingReview != null) {
+            Review updatedReview = editingReview;
+            updatedReview.setRating(rating);
+            updatedReview.setComment(comment);
+            updatedReview.setTimestamp(currentTimestamp);
+            write = reviewService.updateReviewAsync(updatedReview);
+            afterWrite(write, "Review updated successfully!", "An error occurred while updating the review.");
+        } else {
+            Review newReview = new Review(courseId, userService.getCurrentUser().getId(), rating, comment,
+                    currentTimestamp);
+            write = reviewService.createReviewAsync(newReview);
+            afterWrite(write, "Review added successfully!", "An error occurred while adding the review.");
         }
+        // One write at a time, so a double click cannot submit the review twice
+        submitReviewButton.setDisable(true);
+        write.whenCompleteAsync((writeResult, error) -> submitReviewButton.setDisable(false), Platform::runLater);
     }
 
     @FXML
@@ -290,7 +343,7 @@ public class CourseReviewsController {
         toggleReviewBox(false, "");
         commentTextArea.clear();
         ratingField.clear();
-        isUpdating = false;
+        editingReview = null;
     }
 
     // pass "" in buttonText clears the textFields
@@ -313,15 +366,8 @@ public class CourseReviewsController {
     @FXML
     private void navigateToCourseSearch() {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/CourseSearch.fxml"));
-            Scene courseSearchScene = new Scene(loader.load());
-
-            CourseSearchController controller = loader.getController();
-            controller.setServices(userService, courseService, reviewService);
-            controller.setPrimaryStage(primaryStage);
-
-            primaryStage.setScene(courseSearchScene);
-        } catch (IOException e) {
+            navigator.showCourseSearch();
+        } catch (UncheckedIOException e) {
             showError("Failed to load the Course Search screen.");
         }
     }
@@ -1,22 +1,31 @@
 package edu.virginia.sde.reviews;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
-import javafx.stage.Stage;
+import javafx.util.Duration;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class CourseSearchController implements ScreenController {
+    private static final int PAGE_SIZE = 100;
+    // How long typing has to pause before the suggestions update, so a fast typist triggers one lookup, not one per key
+    private static final Duration TYPING_PAUSE = Duration.millis(150);
 
-public class CourseSearchController {
     @FXML
     private TextField searchField;
 
@@ -35,6 +44,9 @@ public class CourseSearchController {
     @FXML
     private TableColumn<Course, String> ratingColumn;
 
+    @FXML
+    private CheckBox sortByRatingBox;
+
     @FXML
     private VBox addCourseForm;
 
@@ -56,17 +68,39 @@ public class CourseSearchController {
     private CourseService courseService;
     private UserService userService;
     private ReviewService reviewService;
-    private Stage primaryStage;
-
-    public void setPrimaryStage(Stage primaryStage) {
-        this.primaryStage = primaryStage;
+    private Navigator navigator;
+    private CompletableFuture<List<Course>> pendingCourses = CompletableFuture.completedFuture(List.of());
+    // Both created by the first refresh, on the JavaFX thread, which initialize() may not run on
+    private PagedTableLoader<Course> courseLoader;
+    private PauseTransition typingPause;
+
+    @Override
+    public void setNavigator(Navigator navigator) {
+        this.navigator = navigator;
     }
 
+    @Override
     public void setServices(UserService userService, CourseService courseService, ReviewService reviewService) {
         this.courseService = courseService;
         this.userService = userService;
         this.reviewService = reviewService;
-        loadCourses();
+    }
+
+    /**
+     * Keeps the search term and sort order of the last visit and runs the search again, so that ratings and courses
+     * added since are current.
+     */
+    @Override
+    public void refresh() {
+        if (courseLoader == null) {
+            setUpOnFxThread();
+        }
+        hideAddCourseForm();
+        errorLabel.setVisible(false);
+        errorLabel.setManaged(false);
+        successLabel.setVisible(false);
+        successLabel.setManaged(false);
+        handleSearch();
     }
 
     @FXML
@@ -75,9 +109,17 @@ public class CourseSearchController {
         numberColumn.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().getNumber()));
         titleColumn.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getTitle()));
         ratingColumn.setCellValueFactory(data -> {
-            Course course = data.getValue();
-            double averageRating = reviewService.getAverageRatingForCourse(course.getId());
-            return new SimpleStringProperty(averageRating == 0.0 ? "No Reviews" : String.format("%.2f", averageRating));
+            // Courses only reach the table once the rating index has loaded; a cell never loads it itself, as that
+            // would wait on the database on the JavaFX thread
+            Optional<RatingHistogramIndex> ratingIndex = reviewService.getLoadedRatingIndex();
+            if (ratingIndex.isEmpty()) {
+                return new SimpleStringProperty("");
+            }
+            OptionalDouble mean = ratingIndex.get().getMean(data.getValue().getId());
+            if (mean.isEmpty()) {
+                return new SimpleStringProperty("No Reviews");
+            }
+            return new SimpleStringProperty(String.format("%.2f", mean.getAsDouble()));
         });
 
         setupRowFactory();
@@ -105,6 +147,18 @@ public class CourseSearchController {
         successLabel.setManaged(false);
     }
 
+    /**
+     * Creates the course loader and the typing pause, which must only be created and used on the JavaFX application
+     * thread; the navigator may parse this screen, and so run {@link #initialize()}, on another thread.
+     */
+    private void setUpOnFxThread() {
+        courseLoader = new PagedTableLoader<>(coursesTable, PAGE_SIZE, this::fetchCoursePage,
+                e -> showError("Failed to load courses. Please try again."));
+        typingPause = new PauseTransition(TYPING_PAUSE);
+        typingPause.setOnFinished(event -> showSuggestions());
+        searchField.textProperty().addListener((observable, oldText, newText) -> typingPause.playFromStart());
+    }
+
     private void setupRowFactory() {
         coursesTable.setRowFactory(tv -> {
             TableRow<Course> row = createRowWithClickListener();
@@ -126,15 +180,81 @@ public class CourseSearchController {
     }
 
     private void loadCourses() {
-        List<Course> courses = courseService.getAllCourses();
-        coursesTable.setItems(FXCollections.observableList(courses));
+        if (sortByRatingBox.isSelected()) {
+            // Ranking needs every course, which the cached catalog and the in-memory rating index provide cheaply
+            showSearchResultsAsync(courseService.getAllCoursesAsync().thenCompose(reviewService::sortByRatingAsync));
+            return;
+        }
+        pendingCourses.cancel(true);
+        courseLoader.reload();
+    }
+
+    /**
+     * Shows the courses matching what has been typed so far, from the in-memory prefix index. A newer keystroke's
+     * suggestions replace these even if these are still loading.
+     */
+    private void showSuggestions() {
+        String text = searchField.getText();
+        if (text == null || text.isBlank()) {
+            loadCourses();
+            return;
+        }
+        CompletableFuture<List<Course>> suggestions = courseService.suggestCoursesAsync(text, PAGE_SIZE);
+        if (sortByRatingBox.isSelected()) {
+            suggestions = suggestions.thenCompose(reviewService::sortByRatingAsync);
+        }
+        showSearchResultsAsync(suggestions);
     }
 
     @FXML
     private void handleSearch() {
+        typingPause.stop();
         String searchTerm = searchField.getText();
-        List<Course> courses = courseService.searchCourses(searchTerm);
-        coursesTable.setItems(FXCollections.observableList(courses));
+        if (searchTerm == null || searchTerm.isBlank()) {
+            loadCourses();
+            return;
+        }
+        CompletableFuture<List<Course>> results = courseService.searchCoursesAsync(searchTerm);
+        if (sortByRatingBox.isSelected()) {
+            results = results.thenCompose(reviewService::sortByRatingAsync);
+        }
+        showSearchResultsAsync(results);
+    }
+
+    private CompletableFuture<List<Course>> fetchCoursePage(Course lastCourse, int pageSize) {
+        int afterCourseId = lastCourse == null ? 0 : lastCourse.getId();
+        return courseService.getCoursesPageAsync(afterCourseId, pageSize).thenCompose(this::withRatingIndex);
+    }
+
+    /**
+     * Makes sure the rating index has loaded before the courses reach the table; a no-op once it has.
+     */
+    private CompletableFuture<List<Course>> withRatingIndex(List<Course> courses) {
+        return reviewService.getRatingIndexAsync().thenApply(index -> courses);
+    }
+
+    /**
+     * Shows search results once they and the rating index have loaded in the background. Starting a new search
+     * cancels the one still in flight, so a slow, older search can never overwrite the results of a newer one.
+     */
+    private void showSearchResultsAsync(CompletableFuture<List<Course>> coursesFuture) {
+        courseLoader.cancel();
+        pendingCourses.cancel(true);
+        pendingCourses = coursesFuture;
+        coursesFuture
+                .thenCompose(this::withRatingIndex)
+                .thenAcceptAsync(courses -> {
+                    if (pendingCourses != coursesFuture) {
+                        return;
+                    }
+                    coursesTable.setItems(FXCollections.observableList(courses));
+                }, Platform::runLater)
+                .exceptionally(e -> {
+                    if (!(e instanceof CancellationException || e.getCause() instanceof CancellationException)) {
+                        Platform.runLater(() -> showError("Failed to load courses. Please try again."));
+                    }
+                    return null;
+                });
     }
 
     @FXML
@@ -152,22 +272,29 @@ public class CourseSearchController {
 
     @FXML
     private void handleSubmitCourse() {
-        try {
-            String mnemonic = mnemonicField.getText().trim().toUpperCase();
-            String numberText = numberField.getText().trim();
-            String title = titleField.getText().trim();
-
-            Course newCourse = new Course(mnemonic, numberText, title);
-            if (courseService.courseExists(newCourse)) {
-                throw new IllegalArgumentException("Course already exists.");
-            }
-            courseService.addCourse(newCourse);
-            loadCourses(); // Refresh the table
-            hideAddCourseForm();
-            showSuccess("Course added successfully!");
-        } catch (IllegalArgumentException e) {
-            showError(e.getMessage());
-        }
+        String mnemonic = mnemonicField.getText().trim().toUpperCase(Locale.ROOT);
+        String numberText = numberField.getText().trim();
+        String title = titleField.getText().trim();
+
+        Course newCourse = new Course(mnemonic, numberText, title);
+        // addCourse both validates the course and checks that it is new, all in the background
+        courseService.addCourseAsync(newCourse)
+                .whenCompleteAsync((added, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        showError(cause instanceof IllegalArgumentException
+                                ? cause.getMessage()
+                                : "Failed to add the course. Please try again.");
+                        return;
+                    }
+                    if (!added) {
+                        showError("Course already exists.");
+                        return;
+                    }
+                    loadCourses(); // Refresh the table
+                    hideAddCourseForm();
+                    showSuccess("Course added successfully!");
+                }, Platform::runLater);
     }
 
     private void clearAddCourseForm() {
@@ -179,15 +306,8 @@ public class CourseSearchController {
     @FXML
     private void navigateToMyReviews() {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/MyReviews.fxml"));
-            Scene myReviewsScene = new Scene(loader.load());
-
-            MyReviewsController controller = loader.getController();
-            controller.setServices(userService, courseService, reviewService); // Pass services
-            controller.setPrimaryStage(primaryStage);
-
-            primaryStage.setScene(myReviewsScene);
-        } catch (IOException e) {
+            navigator.showMyReviews();
+        } catch (UncheckedIOException e) {
             showError("Failed to load My Reviews screen.");
         }
     }
@@ -196,16 +316,11 @@ public class CourseSearchController {
     private void logout() {
         try {
             userService.logout(); // Clear the current user
-
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/login.fxml"));
-            Scene loginScene = new Scene(loader.load());
-
-            LoginController controller = loader.getController();
-            controller.setPrimaryStage(primaryStage);
-            controller.setServices(userService, courseService, reviewService);
-
-            primaryStage.setScene(loginScene);
-        } catch (IOException e) {
+            // This screen is reused, so the next user should not find this one's search
+            searchField.clear();
+            typingPause.stop();
+            navigator.showLogin();
+        } catch (UncheckedIOException e) {
             showError("Failed to load Login screen.");
         }
     }
@@ -218,16 +333,8 @@ public class CourseSearchController {
         }
 
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/CourseReviews.fxml"));
-            Scene courseReviewsScene = new Scene(loader.load());
-
-            CourseReviewsController controller = loader.getController();
-            controller.setCourseId(selectedCourse.getId());
-            controller.setServices(userService, courseService, reviewService);
-            controller.setPrimaryStage(primaryStage);
-
-            primaryStage.setScene(courseReviewsScene);
-        } catch (IOException e) {
+            navigator.showCourseReviews(selectedCourse.getId());
+        } catch (UncheckedIOException e) {
             showError("Failed to load the Course Reviews screen.");
         }
     }
@@ -1,25 +1,207 @@
 package edu.virginia.sde.reviews;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.sql.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public class CourseService {
+    // Search results are ranked, so only the best matches are worth materializing
+    private static final int SEARCH_RESULT_LIMIT = 500;
+    // Courses are small and rarely change, so keep (the most recently used) ten thousand of them in memory
+    private static final int COURSE_CACHE_SIZE = 10_000;
+    private static final String ALL_COURSES = "all";
+
+    /**
+     * The catalog's course ids, overall and per subject, as primitive arrays for ranking.
+     */
+    private static class RankableCatalog {
+        private final int[] allCourseIds;
+        private final Map<String, int[]> courseIdsBySubject;
+        private final Map<Integer, Course> coursesById;
+
+        RankableCatalog(List<Course> courses) {
+            allCourseIds = new int[courses.size()];
+            coursesById = new HashMap<>();
+            Map<String, List<Integer>> idsBySubject = new HashMap<>();
+            for (int i = 0; i < courses.size(); i++) {
+                Course course = courses.get(i);
+                allCourseIds[i] = course.getId();
+                coursesById.put(course.getId(), course);
+                idsBySubject.computeIfAbsent(course.getMnemonic().toUpperCase(), subject -> new ArrayList<>())
+                        .add(course.getId());
+            }
+            courseIdsBySubject = new HashMap<>();
+            idsBySubject.forEach((subject, ids) ->
+                    courseIdsBySubject.put(subject, ids.stream().mapToInt(Integer::intValue).toArray()));
+        }
+    }
+
     private final CourseDatabase courseDatabase;
+    private final Executor executor;
+    // Supplies the rating index for rankings; null if this service was created without one
+    private final ReviewService reviewService;
+    private final LruCache<Integer, Course> coursesById = new LruCache<>(COURSE_CACHE_SIZE);
+    private final LruCache<String, List<Course>> allCourses = new LruCache<>(1);
+    private final LruCache<String, RankableCatalog> rankableCatalog = new LruCache<>(1);
+    // Built from the catalog on first use and then kept up to date by addCourse; guarded by prefixIndexLock
+    private final Object prefixIndexLock = new Object();
+    private volatile CoursePrefixIndex prefixIndex;
 
     public CourseService(CourseDatabase courseDatabase) {
+        this(courseDatabase, DatabaseExecutor.shared());
+    }
+
+    /**
+     * @param executor runs the database work of the {@code ...Async} methods
+     */
+    public CourseService(CourseDatabase courseDatabase, Executor executor) {
+        this(courseDatabase, executor, null);
+    }
+
+    /**
+     * @param reviewService provides the rating index that {@code getTopCourses} ranks by
+     */
+    public CourseService(CourseDatabase courseDatabase, ReviewService reviewService) {
+        this(courseDatabase, DatabaseExecutor.shared(), reviewService);
+    }
+
+    public CourseService(CourseDatabase courseDatabase, Executor executor, ReviewService reviewService) {
         this.courseDatabase = courseDatabase;
+        this.executor = executor;
+        this.reviewService = reviewService;
     }
 
     public List<Course> searchCourses(String searchTerm){
+        if (searchTerm == null || searchTerm.isBlank()) {
+            return getAllCourses();
+        }
         try {
-            return courseDatabase.searchCourses(searchTerm);
+            return courseDatabase.searchCourses(searchTerm, SEARCH_RESULT_LIMIT);
         } catch (SQLException e) {
             throw new RuntimeException("Database error occurred", e);
         }
     }
 
-    public void addCourse(Course course) {
+    /**
+     * @return false if the course already exists (compared case-insensitively), in which case nothing is added
+     */
+    public boolean addCourse(Course course) {
+        validateCourse(course);
 
+        try {
+            Course newCourse = new Course(course.getMnemonic().toUpperCase(Locale.ROOT), course.getNumber(),
+                    course.getTitle());
+            if (!courseDatabase.addCourse(newCourse)) {
+                return false;
+            }
+            course.setId(newCourse.getId());
+            invalidateCatalog();
+            synchronized (prefixIndexLock) {
+                // If the index is built after the insert it already has the course, which withCourse allows for
+                if (prefixIndex != null) {
+                    prefixIndex = prefixIndex.withCourse(newCourse);
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error occurred", e);
+        }
+    }
+
+    /**
+     * Streams a CSV or JSONL course catalog into the database, validating and de-duplicating every row and inserting
+     * the valid ones in large batches. See {@link CourseCatalogImporter} for the accepted formats.
+     */
+    public CourseCatalogImporter.ImportReport importCourses(Reader catalog, CourseCatalogImporter.Format format) {
+        try {
+            return new CourseCatalogImporter(courseDatabase).importCourses(catalog, format);
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error occurred", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading course catalog", e);
+        } finally {
+            // Even a failed import may have committed some batches
+            invalidateCatalog();
+            synchronized (prefixIndexLock) {
+                prefixIndex = null;
+            }
+        }
+    }
+
+    /**
+     * Loads the catalog, the ranking catalog and the prefix index now, so that the first search, suggestion or ranking
+     * does not have to; for use off the JavaFX thread at startup.
+     */
+    public void warmUp() {
+        getRankableCatalog();
+        getPrefixIndex();
+    }
+
+    /**
+     * Serves the catalog from a snapshot instead of the database: the cached course list, the course cache, the prefix
+     * index, the ranking catalog and the review service's rating index are all filled from it in one pass, so the
+     * first search, suggestion or ranking needs no SQL.
+     * <p>
+     * The snapshot is only used if its fingerprint still matches the database's; a snapshot taken before courses or
+     * reviews changed is ignored, leaving everything to load from the database as usual (see {@link #warmUp()}).
+     *
+     * @return whether the snapshot was loaded; false if it is out of date
+     */
+    public boolean loadSnapshot(CatalogSnapshot snapshot) {
+        try {
+            if (!snapshot.getFingerprint().equals(courseDatabase.getCatalogFingerprint())) {
+                return false;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error occurred", e);
+        }
+        List<Course> courses = snapshot.getCourses();
+        invalidateCatalog();
+        allCourses.put(ALL_COURSES, courses);
+        rankableCatalog.put(ALL_COURSES, new RankableCatalog(courses));
+        for (Course course : courses.subList(0, Math.min(courses.size(), COURSE_CACHE_SIZE))) {
+            coursesById.put(course.getId(), course);
+        }
+        synchronized (prefixIndexLock) {
+            prefixIndex = snapshot.toPrefixIndex();
+        }
+        if (reviewService != null) {
+            reviewService.loadSnapshot(snapshot);
+        }
+        return true;
+    }
+
+    /**
+     * Search-as-you-type suggestions: up to {@code limit} courses that have, for every word typed, a mnemonic, number,
+     * course code or title word starting with it. Served from an in-memory prefix index, built from the catalog on
+     * first use, so each call takes microseconds.
+     */
+    public List<Course> suggestCourses(String text, int limit) {
+        return getPrefixIndex().search(text, limit);
+    }
+
+    private CoursePrefixIndex getPrefixIndex() {
+        CoursePrefixIndex index = prefixIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (prefixIndexLock) {
+            if (prefixIndex == null) {
+                prefixIndex = CoursePrefixIndex.of(getAllCourses());
+            }
+            return prefixIndex;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException describing the first field that is invalid
+     */
+    static void validateCourse(Course course) {
         if (course.getMnemonic() == null || course.getMnemonic().length() < 2 || course.getMnemonic().length() > 4 || !course.getMnemonic().matches("[a-zA-Z]+")) {
             throw new IllegalArgumentException("Invalid subject: must be 2-4 letters.");
         }
@@ -29,26 +211,132 @@ public class CourseService {
         if (course.getTitle() == null || course.getTitle().length() < 1 || course.getTitle() .length() > 50) {
             throw new IllegalArgumentException("Invalid title: must be between 1 and 50 characters.");
         }
+    }
+
+    /**
+     * Served from an in-memory cache after the first lookup of each course.
+     */
+    public Optional<Course> getCourseById(int courseId) {
+        return Optional.ofNullable(coursesById.get(courseId, id -> {
+            try {
+                return courseDatabase.getCourseById(id);
+            } catch (SQLException e) {
+                throw new RuntimeException("Database error occurred", e);
+            }
+        }));
+    }
 
+    /**
+     * Served from an in-memory cache until the next course is added. The returned list is unmodifiable.
+     */
+    public List<Course> getAllCourses(){
+        return allCourses.get(ALL_COURSES, key -> {
+            try {
+                return List.copyOf(courseDatabase.getAllCourses());
+            } catch (SQLException e) {
+                throw new RuntimeException("Database error occurred", e);
+            }
+        });
+    }
+
+    /**
+     * Every course in id order, read lazily from the database rather than the cache, for exports and other walks
+     * over a catalog too large to hold in memory. Close the stream (try-with-resources) when done.
+     */
+    public Stream<Course> streamAllCourses() {
         try {
-            Course newCourse = new Course(course.getMnemonic().toUpperCase(),course.getNumber(), course.getTitle());
-            courseDatabase.addCourse(newCourse);
+            return courseDatabase.streamAllCourses();
         } catch (SQLException e) {
             throw new RuntimeException("Database error occurred", e);
         }
     }
 
-    public Optional<Course> getCourseById(int courseId) {
+    /**
+     * Every matching course, best first, without {@code searchCourses}'s result limit; a blank search term streams
+     * every course. Close the stream (try-with-resources) when done.
+     */
+    public Stream<Course> streamSearchCourses(String searchTerm) {
+        if (searchTerm == null || searchTerm.isBlank()) {
+            return streamAllCourses();
+        }
         try {
-            return Optional.ofNullable(courseDatabase.getCourseById(courseId));
+            return courseDatabase.streamSearchCourses(searchTerm);
         } catch (SQLException e) {
             throw new RuntimeException("Database error occurred", e);
         }
     }
 
-    public List<Course> getAllCourses(){
+    /**
+     * The {@code k} best courses in the whole catalog, best first. Served from memory (the cached catalog and the
+     * rating index) in a single pass over the catalog's ids, however many reviews there are.
+     */
+    public List<Course> getTopCourses(int k, RatingHistogramIndex.Ranking ranking) {
+        return topCourses(getRankableCatalog().allCourseIds, k, ranking);
+    }
+
+    /**
+     * The {@code k} best courses of one subject, best first; empty if the subject has no courses. Served from memory
+     * like {@link #getTopCourses(int, RatingHistogramIndex.Ranking)}, scanning only that subject's courses.
+     */
+    public List<Course> getTopCourses(String subjectMnemonic, int k, RatingHistogramIndex.Ranking ranking) {
+        int[] courseIds = getRankableCatalog().courseIdsBySubject.get(subjectMnemonic.toUpperCase());
+        if (courseIds == null) {
+            return List.of();
+        }
+        return topCourses(courseIds, k, ranking);
+    }
+
+    private List<Course> topCourses(int[] courseIds, int k, RatingHistogramIndex.Ranking ranking) {
+        if (reviewService == null) {
+            throw new IllegalStateException("Rankings need a CourseService created with a ReviewService");
+        }
+        RankableCatalog catalog = getRankableCatalog();
+        List<Course> top = new ArrayList<>();
+        for (int courseId : reviewService.getRatingIndex().top(courseIds, k, ranking)) {
+            top.add(catalog.coursesById.get(courseId));
+        }
+        return top;
+    }
+
+    private RankableCatalog getRankableCatalog() {
+        return rankableCatalog.get(ALL_COURSES, key -> new RankableCatalog(getAllCourses()));
+    }
+
+    private void invalidateCatalog() {
+        allCourses.invalidateAll();
+        rankableCatalog.invalidateAll();
+    }
+
+    public LruCache.Stats getCourseCacheStats() {
+        return coursesById.getStats();
+    }
+
+    public LruCache.Stats getAllCoursesCacheStats() {
+        return allCourses.getStats();
+    }
+
+    /**
+     * @param afterCourseId the id of the last course of the previous page, or 0 for the first page
+     */
+    public List<Course> getCoursesPage(int afterCourseId, int pageSize) {
         try {
-            return courseDatabase.getAllCourses();
+            return courseDatabase.getCoursesPage(afterCourseId, pageSize);
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error occurred", e);
+        }
+    }
+
+    /**
+     * A page of the courses matching a search term in id order; a blank search term pages through every course.
+     *
+     * @param afterCourseId the id of the last course of the previous page, or 0 for the first page
+     */
+    public List<Course> searchCoursesPage(String searchTerm, int afterCourseId, int pageSize) {
+        if (searchTerm == null || searchTerm.isBlank()) {
+            return getCoursesPage(afterCourseId, pageSize);
+        }
+        try {
+            return courseDatabase.searchCoursesPage(searchTerm, afterCourseId, pageSize);
         } catch (SQLException e) {
             throw new RuntimeException("Database error occurred", e);
         }
@@ -62,5 +350,40 @@ public class CourseService {
         }
     }
 
+    public CompletableFuture<List<Course>> searchCoursesAsync(String searchTerm) {
+        return CompletableFuture.supplyAsync(() -> searchCourses(searchTerm), executor);
+    }
+
+    /**
+     * @return completes with false if the course already exists, or exceptionally with an IllegalArgumentException if
+     * the course is invalid; see {@link #addCourse(Course)}
+     */
+    public CompletableFuture<Boolean> addCourseAsync(Course course) {
+        return CompletableFuture.supplyAsync(() -> addCourse(course), executor);
+    }
+
+    public CompletableFuture<Optional<Course>> getCourseByIdAsync(int courseId) {
+        return CompletableFuture.supplyAsync(() -> getCourseById(courseId), executor);
+    }
+
+    public CompletableFuture<List<Course>> getCoursesPageAsync(int afterCourseId, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getCoursesPage(afterCourseId, pageSize), executor);
+    }
+
+    public CompletableFuture<List<Course>> getTopCoursesAsync(int k, RatingHistogramIndex.Ranking ranking) {
+        return CompletableFuture.supplyAsync(() -> getTopCourses(k, ranking), executor);
+    }
 
+    public CompletableFuture<List<Course>> getTopCoursesAsync(String subjectMnemonic, int k,
+                                                              RatingHistogramIndex.Ranking ranking) {
+        return CompletableFuture.supplyAsync(() -> getTopCourses(subjectMnemonic, k, ranking), executor);
+    }
+
+    public CompletableFuture<List<Course>> suggestCoursesAsync(String text, int limit) {
+        return CompletableFuture.supplyAsync(() -> suggestCourses(text, limit), executor);
+    }
+
+    public CompletableFuture<List<Course>> getAllCoursesAsync() {
+        return CompletableFuture.supplyAsync(this::getAllCourses, executor);
+    }
 }
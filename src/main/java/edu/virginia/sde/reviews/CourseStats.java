@@ -0,0 +1,68 @@
+package edu.virginia.sde.reviews;
+
+public class CourseStats {
+    private final int courseId;
+    private final int reviewCount;
+    private final long ratingSum;
+    // ratingCounts[0] is the number of 1-star reviews, ratingCounts[4] the number of 5-star reviews
+    private final int[] ratingCounts;
+
+    public CourseStats(int courseId, int reviewCount, long ratingSum, int[] ratingCounts) {
+        if (ratingCounts.length != 5) {
+            throw new IllegalArgumentException("Rating histogram must have exactly 5 buckets");
+        }
+        this.courseId = courseId;
+        this.reviewCount = reviewCount;
+        this.ratingSum = ratingSum;
+        this.ratingCounts = ratingCounts.clone();
+    }
+
+    /**
+     * Stats for a course that has not been reviewed yet.
+     */
+    public static CourseStats empty(int courseId) {
+        return new CourseStats(courseId, 0, 0, new int[5]);
+    }
+
+    public int getCourseId() {
+        return courseId;
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public long getRatingSum() {
+        return ratingSum;
+    }
+
+    /**
+     * @param rating a rating between 1 and 5
+     * @return how many reviews gave the course that rating
+     */
+    public int getRatingCount(int rating) {
+        if (rating < 1 || rating > 5) {
+            throw new IllegalArgumentException("Rating must be an integer between 1 and 5.");
+        }
+        return ratingCounts[rating - 1];
+    }
+
+    public boolean hasReviews() {
+        return reviewCount > 0;
+    }
+
+    /**
+     * @return the mean rating, or 0.0 if the course has no reviews
+     */
+    public double getAverageRating() {
+        if (reviewCount == 0) {
+            return 0.0;
+        }
+        return (double) ratingSum / reviewCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Course ID: " + courseId + ", Reviews: " + reviewCount + ", Average: " + getAverageRating();
+    }
+}
@@ -1,17 +1,89 @@
 package edu.virginia.sde.reviews;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Connection layer for the SQLite database file. The database runs in WAL mode so that readers never block the writer
+ * (or each other):
+ * <ul>
+ *     <li>{@link #read(SqlWork)} borrows one of a fixed pool of read-only connections for the duration of the work</li>
+ *     <li>{@link #write(SqlWork)} runs the work on the single writer connection and commits it. Writers wait their turn
+ *     in a fair (FIFO) queue, so writes are serialized in arrival order</li>
+ * </ul>
+ * Both methods are safe to call from any thread. Work passed to them must not call {@code read} from inside
+ * {@code write} (it would not see the uncommitted changes), and must not nest {@code read} calls.
+ * <p>
+ * Work is timed per query name (see {@link #getMetrics()}), and the timings are published over JMX. Cache sizes,
+ * memory mapping and durability follow a {@link StorageProfile}.
+ */
 public class DatabaseConnection {
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    // How long a read waits for a free pooled reader before failing instead of queueing forever
+    private static final int READER_WAIT_MILLIS = 10_000;
+    private static final String UNNAMED_QUERY = "unnamed";
+    // Rows the driver is asked to buffer per round trip when streaming; SQLite steps rows lazily in any case
+    private static final int STREAM_FETCH_SIZE = 256;
+
     private final String sqliteFilename;
+    private final int readerCount;
+    private final int statementCacheSize;
+    private final StorageProfile storageProfile;
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private final List<StatementCache> allReaders = new ArrayList<>();
+    private BlockingQueue<StatementCache> idleReaders;
     private Connection connection;
+    private StatementCache statementCache;
+    private QueryMetrics metrics;
 
+    /**
+     * Uses the storage profile picked by configuration; see {@link StorageProfile#fromConfiguration()}.
+     */
     public DatabaseConnection(String sqliteFilename) {
+        this(sqliteFilename, StorageProfile.fromConfiguration());
+    }
+
+    public DatabaseConnection(String sqliteFilename, StorageProfile storageProfile) {
+        this(sqliteFilename, Math.max(2, Runtime.getRuntime().availableProcessors()), DEFAULT_STATEMENT_CACHE_SIZE,
+                storageProfile);
+    }
+
+    /**
+     * @param readerCount        the number of read-only connections in the pool
+     * @param statementCacheSize the maximum number of prepared statements kept open per connection
+     */
+    public DatabaseConnection(String sqliteFilename, int readerCount, int statementCacheSize) {
+        this(sqliteFilename, readerCount, statementCacheSize, StorageProfile.fromConfiguration());
+    }
+
+    public DatabaseConnection(String sqliteFilename, int readerCount, int statementCacheSize,
+                              StorageProfile storageProfile) {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("At least one reader connection is required");
+        }
         this.sqliteFilename = sqliteFilename;
+        this.readerCount = readerCount;
+        this.statementCacheSize = statementCacheSize;
+        this.storageProfile = storageProfile;
     }
 
     /**
-     * Connect to a SQLite Database. This turns out Foreign Key enforcement, and disables auto-commits
+     * Connect to a SQLite Database. This opens the writer connection, which turns on Foreign Key enforcement and
+     * disables auto-commits, switches the database to WAL mode, and then opens the pool of read-only connections.
+     * Every connection gets the storage profile's PRAGMAs. If any step fails, every connection opened so far is
+     * closed again before the exception is thrown.
      *
      * @throws SQLException
      */
@@ -20,94 +92,322 @@ public class DatabaseConnection {
             throw new IllegalStateException("The connection is already opened");
         }
         connection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFilename);
-        //the next line enables foreign key enforcement - do not delete/comment out
-        connection.createStatement().execute("PRAGMA foreign_keys = ON");
-        //the next line disables auto-commit - do not delete/comment out
-        connection.setAutoCommit(false);
+        try {
+            try (Statement stmt = connection.createStatement()) {
+                //the next line enables foreign key enforcement - do not delete/comment out
+                stmt.execute("PRAGMA foreign_keys = ON");
+                // WAL lets the reader connections keep reading while the writer commits
+                stmt.execute("PRAGMA journal_mode = WAL");
+                stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+            }
+            storageProfile.applyToWriter(connection);
+            //the next line disables auto-commit - do not delete/comment out
+            connection.setAutoCommit(false);
+            statementCache = new StatementCache(connection, statementCacheSize);
+            metrics = new QueryMetrics(sqliteFilename);
+
+            idleReaders = new ArrayBlockingQueue<>(readerCount);
+            for (int i = 0; i < readerCount; i++) {
+                StatementCache readerStatements = openReader();
+                allReaders.add(readerStatements);
+                idleReaders.add(readerStatements);
+            }
+        } catch (SQLException | RuntimeException e) {
+            closeAfterFailedConnect(e);
+            throw e;
+        }
+    }
+
+    private StatementCache openReader() throws SQLException {
+        Connection reader = DriverManager.getConnection("jdbc:sqlite:" + sqliteFilename);
+        try {
+            try (Statement stmt = reader.createStatement()) {
+                stmt.execute("PRAGMA query_only = ON");
+                stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+            }
+            storageProfile.applyToReader(reader);
+            // Each read runs in its own transaction (ended in read()) so multi-statement reads see one snapshot
+            reader.setAutoCommit(false);
+            return new StatementCache(reader, statementCacheSize);
+        } catch (SQLException | RuntimeException e) {
+            closeSuppressing(reader, e);
+            throw e;
+        }
     }
 
     /**
-     * Commit all changes since the connection was opened OR since the last commit/rollback
+     * Closes the readers and the writer that a failed {@link #connect()} had opened, recording any failure to close
+     * them on the exception that made it fail.
      */
-    public void commit() throws SQLException {
-        connection.commit();
+    private void closeAfterFailedConnect(Exception failure) {
+        for (StatementCache reader : allReaders) {
+            closeSuppressing(reader.getConnection(), failure);
+        }
+        allReaders.clear();
+        idleReaders = null;
+        statementCache = null;
+        if (metrics != null) {
+            metrics.unregister();
+            metrics = null;
+        }
+        closeSuppressing(connection, failure);
+    }
+
+    private static void closeSuppressing(Connection connection, Exception failure) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    public StorageProfile getStorageProfile() {
+        return storageProfile;
     }
 
     /**
-     * Rollback to the last commit, or when the connection was opened
+     * @return the statistics of every named query run on this connection since it was opened
      */
-    public void rollback() throws SQLException {
-        connection.rollback();
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        return read(UNNAMED_QUERY, work);
     }
 
     /**
-     * Ends the connection to the database
+     * Runs read-only work on a pooled reader connection, waiting for one to become free if all are in use.
+     *
+     * @param queryName the name the work's timings are recorded under, e.g. {@code "CourseDatabase.searchCourses"}
+     * @throws SQLException if no reader becomes free within {@value #READER_WAIT_MILLIS} ms
      */
-    public void disconnect() throws SQLException {
-        connection.close();
+    public <T> T read(String queryName, SqlWork<T> work) throws SQLException {
+        StatementCache reader = borrowReader();
+        try {
+            return timed(queryName, reader, work);
+        } finally {
+            returnReader(reader);
+        }
     }
 
     /**
-     * Creates the database tables if they do not already exist.
+     * Runs a query on a pooled reader connection and returns its rows as a lazy stream, so that walking even a whole
+     * table takes constant memory. All rows come from one consistent snapshot.
+     * <p>
+     * The stream holds its reader connection until it is closed or read to the end, so always use it in a
+     * try-with-resources block. Like {@code read}, it must not be opened from inside {@code read} or {@code write} work.
      *
-     * @throws SQLException
+     * @param query  prepares and executes the query, returning its ResultSet (which the stream closes)
+     * @param mapper turns each row into an element of the stream
      */
-    public void createTables() throws SQLException {
-        if (connection.isClosed()) {
-            throw new IllegalStateException("Connection is already closed");
+    public <T> Stream<T> stream(String queryName, SqlWork<ResultSet> query, RowMapper<T> mapper)
+            throws SQLException {
+        StatementCache reader = borrowReader();
+        QueryStats stats = metrics.query(queryName);
+        long start = System.nanoTime();
+        ResultSet resultSet;
+        try {
+            resultSet = query.run(reader);
+            resultSet.setFetchSize(STREAM_FETCH_SIZE);
+        } catch (SQLException | RuntimeException e) {
+            stats.recordError(System.nanoTime() - start);
+            returnReader(reader);
+            throw e;
         }
+        Cursor<T> cursor = new Cursor<>(reader, resultSet, mapper, stats, start);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    /**
+     * Walks an open ResultSet one row at a time, and hands the reader back to the pool once the rows run out, the
+     * stream is closed, or reading fails.
+     */
+    private class Cursor<T> extends Spliterators.AbstractSpliterator<T> {
+        private final StatementCache reader;
+        private final ResultSet resultSet;
+        private final RowMapper<T> mapper;
+        private final QueryStats stats;
+        private final long startNanos;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private long rows = 0;
+
+        Cursor(StatementCache reader, ResultSet resultSet, RowMapper<T> mapper, QueryStats stats, long startNanos) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.reader = reader;
+            this.resultSet = resultSet;
+            this.mapper = mapper;
+            this.stats = stats;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed.get()) {
+                return false;
+            }
+            T row;
+            try {
+                if (!resultSet.next()) {
+                    close();
+                    return false;
+                }
+                row = mapper.map(resultSet);
+            } catch (SQLException e) {
+                release(false);
+                throw new RuntimeException("Database error occurred", e);
+            }
+            rows++;
+            action.accept(row);
+            return true;
+        }
+
+        void close() {
+            release(true);
+        }
+
+        private void release(boolean succeeded) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            long elapsed = System.nanoTime() - startNanos;
+            if (succeeded) {
+                stats.recordSuccess(elapsed, rows);
+            } else {
+                stats.recordError(elapsed);
+            }
+            try {
+                resultSet.close();
+            } catch (SQLException e) {
+                System.err.println("Failed to close a streamed result set: " + e.getMessage());
+            }
+            try {
+                returnReader(reader);
+            } catch (SQLException e) {
+                System.err.println("Failed to end a streamed read: " + e.getMessage());
+            }
+        }
+    }
+
+    private StatementCache borrowReader() throws SQLException {
+        getConnection(); // fails fast if the database is not connected
+        try {
+            StatementCache reader = idleReaders.poll(READER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (reader == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+            return reader;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    private void returnReader(StatementCache reader) throws SQLException {
+        try {
+            // Ends the read transaction so the next read sees the latest committed data
+            reader.getConnection().rollback();
+        } finally {
+            idleReaders.add(reader);
+        }
+    }
+
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        return write(UNNAMED_QUERY, work);
+    }
+
+    /**
+     * Runs work on the writer connection and commits it, or rolls it back if the work throws. Calls made while the
+     * current thread is already inside {@code write} join the outer transaction instead of committing on their own.
+     *
+     * @param queryName the name the work's timings are recorded under; commits and rollbacks are recorded separately
+     */
+    public <T> T write(String queryName, SqlWork<T> work) throws SQLException {
+        getConnection(); // fails fast if the database is not connected
+        if (writeLock.isHeldByCurrentThread()) {
+            return timed(queryName, statementCache, work);
+        }
+        writeLock.lock();
         try {
-            createUsersTable();
-            createCoursesTable();
-            createReviewsTable();
-        }  catch (SQLException e) {
-//            rollback();
+            T result = timed(queryName, statementCache, work);
+            long commitStart = System.nanoTime();
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                metrics.commits().recordError(System.nanoTime() - commitStart);
+                throw e;
+            }
+            metrics.commits().recordSuccess(System.nanoTime() - commitStart, 0);
+            return result;
+        } catch (Throwable e) {
+            // Errors too, or the next write would commit whatever this one left half done
+            long rollbackStart = System.nanoTime();
+            connection.rollback();
+            metrics.rollbacks().recordSuccess(System.nanoTime() - rollbackStart, 0);
             throw e;
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    public void createUsersTable() throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement("""
-            CREATE TABLE IF NOT EXISTS Users (
-                UserID INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
-                Username TEXT NOT NULL UNIQUE,
-                Password TEXT NOT NULL
-            )
-            """)) {
-            stmt.executeUpdate();
+    private <T> T timed(String queryName, StatementCache statements, SqlWork<T> work) throws SQLException {
+        QueryStats stats = metrics.query(queryName);
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = work.run(statements);
+        } catch (SQLException | RuntimeException e) {
+            stats.recordError(System.nanoTime() - start);
+            throw e;
         }
+        stats.recordSuccess(System.nanoTime() - start, QueryMetrics.rowCount(result));
+        return result;
+    }
+
+    /**
+     * Commit all changes on the writer connection since it was opened OR since the last commit/rollback. Prefer
+     * {@link #write(SqlWork)}, which commits for you and is safe to call from several threads.
+     */
+    public void commit() throws SQLException {
+        connection.commit();
+    }
+
+    /**
+     * Rollback the writer connection to the last commit, or when the connection was opened
+     */
+    public void rollback() throws SQLException {
+        connection.rollback();
     }
 
-    public void createCoursesTable() throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement("""
-            CREATE TABLE IF NOT EXISTS Courses (
-                CourseID INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
-                SubjectMnemonic TEXT NOT NULL,
-                CourseNumber TEXT NOT NULL,
-                Title TEXT NOT NULL,
-                CONSTRAINT UniqueCourse UNIQUE (SubjectMnemonic, CourseNumber, Title)
-            )
-            """)) {
-            stmt.executeUpdate();
+    /**
+     * Ends every connection to the database, closing their cached statements first
+     */
+    public void disconnect() throws SQLException {
+        try {
+            for (StatementCache reader : allReaders) {
+                reader.close();
+                reader.getConnection().close();
+            }
+            allReaders.clear();
+            statementCache.close();
+        } finally {
+            metrics.unregister();
+            connection.close();
         }
     }
 
-    private void createReviewsTable() throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                CREATE TABLE IF NOT EXISTS Reviews (
-                    ReviewID INTEGER PRIMARY KEY AUTOINCREMENT,
-                    UserID INTEGER NOT NULL,
-                    CourseID INTEGER NOT NULL,
-                    Rating INTEGER NOT NULL,
-                    Comment TEXT,
-                    Timestamp TIMESTAMP NOT NULL,
-                    FOREIGN KEY (UserID) REFERENCES Users(UserID) ON DELETE CASCADE,
-                    FOREIGN KEY (CourseID) REFERENCES Courses(CourseID) ON DELETE CASCADE,
-                    CONSTRAINT UniqueReview UNIQUE (UserID, CourseID)
-                )
-                """)) {
-            stmt.executeUpdate();
+    /**
+     * Creates the database tables if they do not already exist, and brings an existing database's schema up to date
+     * by applying any pending {@link SchemaMigrator} migrations.
+     *
+     * @return the migrations that were applied
+     * @throws SQLException
+     */
+    public List<SchemaMigrator.Migration> createTables() throws SQLException {
+        if (connection.isClosed()) {
+            throw new IllegalStateException("Connection is already closed");
         }
+        return new SchemaMigrator(connection).migrate();
     }
 
     /**
@@ -118,6 +418,7 @@ public class DatabaseConnection {
             preparedStatement.execute("DELETE FROM Reviews;");
             preparedStatement.execute("DELETE FROM Users;");
             preparedStatement.execute("DELETE FROM Courses;");
+            preparedStatement.execute("DELETE FROM CourseStats;");
         } catch (SQLException e) {
             rollback();
             throw e;
@@ -125,7 +426,8 @@ public class DatabaseConnection {
     }
 
     /**
-     * Get the database connection.
+     * Get the writer connection. Only use this for single-threaded setup work such as {@link #createTables()};
+     * everything else should go through {@link #read(SqlWork)} or {@link #write(SqlWork)}.
      *
      * @return Connection
      * @throws SQLException
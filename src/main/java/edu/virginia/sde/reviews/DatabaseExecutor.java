@@ -0,0 +1,34 @@
+package edu.virginia.sde.reviews;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor that the services' {@code ...Async} methods run their database work on, so that it never runs on the
+ * JavaFX application thread. Each task gets its own virtual thread: most of their time is spent waiting for a reader
+ * or the writer of the {@link DatabaseConnection}, whose pools bound the database work, so a burst of tasks queues
+ * there rather than behind a fixed number of threads. Virtual threads are daemons, so they never keep the
+ * application alive on exit.
+ */
+public final class DatabaseExecutor {
+    private static final ExecutorService SHARED = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("database-worker-", 1).factory());
+
+    private DatabaseExecutor() {
+    }
+
+    public static ExecutorService shared() {
+        return SHARED;
+    }
+
+    static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
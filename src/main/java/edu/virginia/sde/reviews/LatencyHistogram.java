@@ -0,0 +1,95 @@
+package edu.virginia.sde.reviews;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, log-linear latency histogram in the style of HdrHistogram. Values (nanoseconds) are bucketed by their
+ * top {@value #SUB_BUCKET_BITS} significant bits, so every recorded value is reported within about 3% of its true
+ * value, from 1 ns up to hundreds of years, using under 2k counters. Recording is lock-free and safe from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;        // exact buckets for values below 64
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;   // buckets per power of two above that
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalValue.add(value);
+        maxValue.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0.0 : (double) totalValue.sum() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the (upper bound of the bucket holding the) value at the given percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalValue.reset();
+        maxValue.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);              // >= SUB_BUCKET_BITS
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS + 1)); // in [32, 64)
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT
+                + (mantissa - HALF_SUB_BUCKET_COUNT);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int exponent = offset / HALF_SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        long mantissa = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
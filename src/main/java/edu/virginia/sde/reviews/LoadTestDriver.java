@@ -0,0 +1,369 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes a weighted mix of user operations through {@link UserService}, {@link CourseService} and
+ * {@link ReviewService} from several concurrent clients, and reports throughput and latency per operation.
+ * <p>
+ * Expects a database produced by {@link SyntheticDataGenerator}, so that user {@code i} can log in as
+ * {@link SyntheticDataGenerator#username(int) student(i - 1)}. Each client is one thread holding its own session
+ * token, which it resolves on every operation; all clients share one set of services, as a server would.
+ */
+public class LoadTestDriver implements AutoCloseable {
+    public enum Operation {
+        SEARCH, COURSE_PAGE, ADD_REVIEW, UPDATE_REVIEW, DELETE_REVIEW, LOGIN
+    }
+
+    public static final Map<Operation, Integer> DEFAULT_MIX = Map.of(
+            Operation.SEARCH, 40,
+            Operation.COURSE_PAGE, 30,
+            Operation.ADD_REVIEW, 10,
+            Operation.UPDATE_REVIEW, 8,
+            Operation.DELETE_REVIEW, 5,
+            Operation.LOGIN, 7);
+
+    private static final int REVIEW_PAGE_SIZE = 50;
+
+    public static class OperationStats {
+        private final LatencyHistogram latencyNanos = new LatencyHistogram();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        public LatencyHistogram getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * @return operations the service refused with a user-facing message, e.g. reviewing a course twice
+         */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * @return operations that threw
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    public static class Report {
+        private final int clients;
+        private final long elapsedNanos;
+        private final Map<Operation, OperationStats> stats;
+
+        Report(int clients, long elapsedNanos, Map<Operation, OperationStats> stats) {
+            this.clients = clients;
+            this.elapsedNanos = elapsedNanos;
+            this.stats = stats;
+        }
+
+        public int getClients() {
+            return clients;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public OperationStats getStats(Operation operation) {
+            return stats.get(operation);
+        }
+
+        public long getTotalOperations() {
+            return stats.values().stream().mapToLong(s -> s.latencyNanos.getCount()).sum();
+        }
+
+        public double getThroughput(Operation operation) {
+            return stats.get(operation).latencyNanos.getCount() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        public double getTotalThroughput() {
+            return getTotalOperations() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder(String.format(
+                    "%d clients, %.1f s, %d operations, %.0f ops/s%n",
+                    clients, elapsedNanos / 1_000_000_000.0, getTotalOperations(), getTotalThroughput()));
+            report.append(String.format("%-14s %10s %10s %9s %9s %9s %9s %9s %8s %8s%n",
+                    "operation", "count", "ops/s", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms",
+                    "rejected", "errors"));
+            for (Operation operation : Operation.values()) {
+                OperationStats operationStats = stats.get(operation);
+                LatencyHistogram latency = operationStats.latencyNanos;
+                report.append(String.format("%-14s %10d %10.0f %9.2f %9.2f %9.2f %9.2f %9.2f %8d %8d%n",
+                        operation, latency.getCount(), getThroughput(operation),
+                        latency.getMean() / 1e6,
+                        latency.getValueAtPercentile(50) / 1e6,
+                        latency.getValueAtPercentile(95) / 1e6,
+                        latency.getValueAtPercentile(99) / 1e6,
+                        latency.getMax() / 1e6,
+                        operationStats.getRejected(), operationStats.getErrors()));
+            }
+            return report.toString();
+        }
+    }
+
+    private final SessionRegistry sessions = new SessionRegistry();
+    private final UserService userService;
+    private final CourseService courseService;
+    private final ReviewService reviewService;
+    // Null unless review writes are group-committed
+    private final ReviewWriteQueue writeQueue;
+    private final Operation[] weightedOperations;
+    private final int userCount;
+    private final int courseCount;
+
+    public LoadTestDriver(DatabaseConnection databaseConnection, Map<Operation, Integer> mix) throws SQLException {
+        this(databaseConnection, mix, false);
+    }
+
+    /**
+     * @param groupCommit whether review writes go through a {@link ReviewWriteQueue} instead of committing one by one
+     */
+    public LoadTestDriver(DatabaseConnection databaseConnection, Map<Operation, Integer> mix, boolean groupCommit)
+            throws SQLException {
+        this.userService = new UserService(new UserDatabase(databaseConnection), sessions);
+        ReviewDatabase reviewDatabase = new ReviewDatabase(databaseConnection);
+        this.writeQueue = groupCommit ? new ReviewWriteQueue(databaseConnection, reviewDatabase) : null;
+        this.reviewService = new ReviewService(reviewDatabase, writeQueue);
+        this.courseService = new CourseService(new CourseDatabase(databaseConnection), reviewService);
+        this.weightedOperations = expandMix(mix);
+        this.userCount = maxId(databaseConnection, "SELECT MAX(UserID) FROM Users");
+        this.courseCount = maxId(databaseConnection, "SELECT MAX(CourseID) FROM Courses");
+        if (userCount == 0 || courseCount == 0) {
+            throw new IllegalArgumentException("The database has no users or no courses; run SyntheticDataGenerator first");
+        }
+    }
+
+    /**
+     * Runs {@code clients} threads for {@code duration} and waits for all of them to finish.
+     */
+    public Report run(int clients, Duration duration) throws InterruptedException {
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        long[] deadline = new long[1];
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                Client client = new Client();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                while (System.nanoTime() < deadline[0] && !Thread.currentThread().isInterrupted()) {
+                    client.runOne(stats);
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        long startNanos = System.nanoTime();
+        deadline[0] = startNanos + duration.toNanos();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new Report(clients, System.nanoTime() - startNanos, stats);
+    }
+
+    @Override
+    public void close() {
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
+        sessions.close();
+    }
+
+    private class Client {
+        private String sessionToken;
+        // Ids of reviews this client's current user is known to have written
+        private final Deque<Integer> ownReviewIds = new ArrayDeque<>();
+
+        Client() {
+            login();
+        }
+
+        void runOne(Map<Operation, OperationStats> stats) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+            if ((operation == Operation.UPDATE_REVIEW || operation == Operation.DELETE_REVIEW)
+                    && ownReviewIds.isEmpty()) {
+                findOwnReviews();
+                if (ownReviewIds.isEmpty()) {
+                    operation = Operation.ADD_REVIEW;
+                }
+            }
+            OperationStats operationStats = stats.get(operation);
+            long startNanos = System.nanoTime();
+            try {
+                if (!perform(operation, random)) {
+                    operationStats.rejected.increment();
+                }
+            } catch (RuntimeException e) {
+                operationStats.errors.increment();
+            } finally {
+                operationStats.latencyNanos.record(System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * @return false if the service rejected the operation
+         */
+        private boolean perform(Operation operation, ThreadLocalRandom random) {
+            int userId = currentUser().getId();
+            switch (operation) {
+                case SEARCH -> courseService.searchCourses(randomSearchTerm(random));
+                case COURSE_PAGE -> {
+                    int courseId = random.nextInt(courseCount) + 1;
+                    courseService.getCourseById(courseId);
+                    reviewService.getCourseStats(courseId);
+                    reviewService.getReviewsForCoursePage(courseId, null, REVIEW_PAGE_SIZE);
+                    reviewService.getUserReviewForCourse(userId, courseId);
+                }
+                case ADD_REVIEW -> {
+                    int courseId = random.nextInt(courseCount) + 1;
+                    Review review = new Review(courseId, userId, random.nextInt(5) + 1, "Load test review",
+                            new Timestamp(System.currentTimeMillis()));
+                    if (!reviewService.createReview(review).isOk()) {
+                        return false;
+                    }
+                    ownReviewIds.add(review.getId());
+                }
+                case UPDATE_REVIEW -> {
+                    Review review = new Review(ownReviewIds.peekFirst(), 0, userId, random.nextInt(5) + 1,
+                            "Updated load test review", new Timestamp(System.currentTimeMillis()));
+                    return reviewService.updateReview(review).isOk();
+                }
+                case DELETE_REVIEW -> {
+                    return reviewService.deleteReview(ownReviewIds.removeFirst()).isOk();
+                }
+                case LOGIN -> {
+                    return login();
+                }
+            }
+            return true;
+        }
+
+        private boolean login() {
+            int userId = ThreadLocalRandom.current().nextInt(userCount) + 1;
+            ownReviewIds.clear();
+            userService.logout(sessionToken);
+            sessionToken = userService.login(SyntheticDataGenerator.username(userId - 1),
+                    SyntheticDataGenerator.PASSWORD).orElse(null);
+            return sessionToken != null;
+        }
+
+        private User currentUser() {
+            return userService.getUserForSession(sessionToken)
+                    .orElseThrow(() -> new IllegalStateException("Not logged in"));
+        }
+
+        private void findOwnReviews() {
+            User user = currentUser();
+            for (Review review : reviewService.getReviewsByUserPage(user.getId(), null, REVIEW_PAGE_SIZE)) {
+                ownReviewIds.add(review.getId());
+            }
+        }
+    }
+
+    private static String randomSearchTerm(ThreadLocalRandom random) {
+        if (random.nextBoolean()) {
+            String[] subjects = SyntheticDataGenerator.SUBJECTS;
+            return subjects[random.nextInt(subjects.length)] + " " + (random.nextInt(9) + 1);
+        }
+        String word = SyntheticDataGenerator.TITLE_WORDS[random.nextInt(SyntheticDataGenerator.TITLE_WORDS.length)];
+        // Mostly prefixes, as typed into the search box
+        return word.substring(0, Math.min(word.length(), 2 + random.nextInt(word.length())));
+    }
+
+    private static Operation[] expandMix(Map<Operation, Integer> mix) {
+        List<Operation> operations = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + operation);
+            }
+            operations.addAll(Collections.nCopies(weight, operation));
+        });
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty");
+        }
+        return operations.toArray(new Operation[0]);
+    }
+
+    /**
+     * Parses a mix such as {@code search=60,course_page=30,login=10}; operations left out get no traffic.
+     */
+    public static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight but found: " + entry);
+            }
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    private static int maxId(DatabaseConnection databaseConnection, String sql) throws SQLException {
+        return databaseConnection.read("LoadTestDriver.maxId", statements -> {
+            try (ResultSet rs = statements.prepare(sql).executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * {@code LoadTestDriver <database file> [clients] [seconds] [mix]}, e.g.
+     * {@code LoadTestDriver load.db 16 60 search=50,course_page=30,add_review=10,login=10}
+     * <p>
+     * Run with {@code -Dreviews.groupCommit=true} to send review writes through a {@link ReviewWriteQueue}.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: LoadTestDriver <database file> [clients] [seconds] [operation=weight,...]");
+            System.exit(1);
+        }
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        Map<Operation, Integer> mix = args.length > 3 ? parseMix(args[3]) : DEFAULT_MIX;
+
+        DatabaseConnection databaseConnection = new DatabaseConnection(args[0]);
+        databaseConnection.connect();
+        boolean groupCommit = Boolean.getBoolean("reviews.groupCommit");
+        try (LoadTestDriver driver = new LoadTestDriver(databaseConnection, mix, groupCommit)) {
+            System.out.print(driver.run(clients, Duration.ofSeconds(seconds)));
+            System.out.println();
+            System.out.println("Per query:");
+            databaseConnection.getMetrics().getQueries().values().forEach(System.out::println);
+            System.out.println(databaseConnection.getMetrics().commits());
+            System.out.println(databaseConnection.getMetrics().rollbacks());
+            System.out.println("Course cache: " + driver.courseService.getCourseCacheStats());
+            if (driver.writeQueue != null) {
+                System.out.printf("Group commit: %d review writes in %d batches (%.1f per commit)%n",
+                        driver.writeQueue.getMutationCount(), driver.writeQueue.getBatchCount(),
+                        driver.writeQueue.getAverageBatchSize());
+            }
+        } finally {
+            databaseConnection.disconnect();
+        }
+    }
+}
@@ -2,18 +2,16 @@ package edu.virginia.sde.reviews;
 
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.VBox;
-import javafx.stage.Stage;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
-public class LoginController {
+public class LoginController implements ScreenController {
 
     @FXML
     private TextField usernameField;
@@ -48,23 +46,61 @@ public class LoginController {
     @FXML
     private PasswordField registerPasswordField;
 
+    @FXML
+    private Button loginButton;
+
+    @FXML
+    private Button registerButton;
+
     @FXML
     private Label toggleLabel;
 
     private UserService userService;
-    private CourseService courseService;
-    private ReviewService reviewService;
-    private Stage primaryStage;
+    private Navigator navigator;
     private boolean isLoginMode = true;
+    // Completes once the database is open and migrated; this screen may be showing before then
+    private CompletableFuture<?> databaseReady = CompletableFuture.completedFuture(null);
 
-    public void setPrimaryStage(Stage primaryStage) {
-        this.primaryStage = primaryStage;
+    @Override
+    public void setNavigator(Navigator navigator) {
+        this.navigator = navigator;
     }
 
+    @Override
     public void setServices(UserService userService, CourseService courseService, ReviewService reviewService) {
         this.userService = userService;
-        this.courseService = courseService;
-        this.reviewService = reviewService;
+    }
+
+    /**
+     * Keeps logging in and signing up disabled until the database, which is opened in the background while this screen
+     * is already showing, is ready.
+     */
+    public void setDatabaseReady(CompletableFuture<?> databaseReady) {
+        this.databaseReady = databaseReady;
+        loginButton.setDisable(true);
+        registerButton.setDisable(true);
+        databaseReady.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                displayError("Failed to open the database. Please restart the application.");
+                return;
+            }
+            loginButton.setDisable(false);
+            registerButton.setDisable(false);
+        }));
+    }
+
+    /**
+     * Clears both forms and goes back to login mode, e.g. after logging out.
+     */
+    @Override
+    public void refresh() {
+        if (!isLoginMode) {
+            toggle();
+        }
+        usernameField.clear();
+        passwordField.clear();
+        loginErrorLabel.setVisible(false);
+        loginErrorLabel.setManaged(false);
     }
 
     @FXML
@@ -105,6 +141,9 @@ public class LoginController {
 
     @FXML
     public void handleLoginButton() {
+        if (!isDatabaseReady()) {
+            return;
+        }
         String username = usernameField.getText().trim();
         String password = passwordField.getText();
 
@@ -128,6 +167,9 @@ public class LoginController {
 
     @FXML
     public void handleRegisterButton() {
+        if (!isDatabaseReady()) {
+            return;
+        }
         String username = registerUsernameField.getText().trim();
         String password = registerPasswordField.getText();
 
@@ -137,7 +179,7 @@ public class LoginController {
 //        }
 
         User user = new User(username, password);
-        Optional<String> registerResult = userService.registerUser(user);
+        Optional<String> registerResult = userService.registerUser(user).getError();
         if (registerResult.isPresent()) {
             displayError(registerResult.get());
         } else {
@@ -181,6 +223,21 @@ public class LoginController {
         registerSuccessLabel.setManaged(false);
     }
 
+    /**
+     * Enter can submit the form while the buttons are still disabled, so the handlers check for themselves.
+     */
+    private boolean isDatabaseReady() {
+        if (!databaseReady.isDone()) {
+            displayError("Still starting up, please try again in a moment.");
+            return false;
+        }
+        if (databaseReady.isCompletedExceptionally()) {
+            displayError("Failed to open the database. Please restart the application.");
+            return false;
+        }
+        return true;
+    }
+
     private void displayError(String message) {
         if (isLoginMode) {
             loginErrorLabel.setText(message);
@@ -205,14 +262,8 @@ public class LoginController {
 
     private void switchToCourseSearch() {
         try {
-            var fxmlLoader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/CourseSearch.fxml"));
-            var newScene = new Scene(fxmlLoader.load());
-            var controller = (CourseSearchController) fxmlLoader.getController();
-            controller.setPrimaryStage(primaryStage);
-            controller.setServices(userService, courseService, reviewService);
-            primaryStage.setScene(newScene);
-            primaryStage.show();
-        } catch (IOException e) {
+            navigator.showCourseSearch();
+        } catch (UncheckedIOException e) {
             displayError("Failed to load the Course Search screen.");
         }
     }
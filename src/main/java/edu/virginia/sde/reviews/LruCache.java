@@ -0,0 +1,132 @@
+package edu.virginia.sde.reviews;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A size-bounded, least-recently-used read-through cache with hit/miss/eviction counters. Safe to use from any thread.
+ * <p>
+ * Values are loaded outside the cache's lock, so a slow load never blocks lookups of other keys. Two threads missing
+ * on the same key may both load it. A load that overlaps {@link #invalidate(Object)} or {@link #invalidateAll()} is
+ * returned to its caller but not cached, so an invalidation is never undone by a load that read the old data.
+ */
+public class LruCache<K, V> {
+    /**
+     * A point-in-time copy of a cache's counters.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        public Stats(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                    size, hits, misses, getHitRate() * 100, evictions);
+        }
+    }
+
+    private final Map<K, V> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // Bumped by every invalidation; a load only caches its value if no invalidation happened while it ran
+    private long generation = 0;
+
+    public LruCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value for the key, or else the loader's value, which is cached unless it is {@code null}
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            V cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        V loaded = loader.apply(key);
+        if (loaded != null) {
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    entries.put(key, loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Caches a value without counting a miss, e.g. to warm the cache from a bulk load.
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+}
@@ -1,69 +1,79 @@
 package edu.virginia.sde.reviews;
 
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.text.Text;
-import javafx.stage.Stage;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Optional;
 
-public class MyReviewsController {
+public class MyReviewsController implements ScreenController {
+    private static final int PAGE_SIZE = 50;
+
     @FXML
-    private TableView<Review> reviewsTable;
+    private TableView<ReviewDetails> reviewsTable;
 
     @FXML
-    private TableColumn<Review, String> courseColumn;
+    private TableColumn<ReviewDetails, String> courseColumn;
 
     @FXML
-    private TableColumn<Review, Integer> ratingColumn;
+    private TableColumn<ReviewDetails, Integer> ratingColumn;
 
     @FXML
-    private TableColumn<Review, String> commentColumn;
+    private TableColumn<ReviewDetails, String> commentColumn;
 
     @FXML
-    private TableColumn<Review, String> timestampColumn;
+    private TableColumn<ReviewDetails, String> timestampColumn;
 
     @FXML
-    private TableColumn<Review, Void> deleteColumn;
+    private TableColumn<ReviewDetails, Void> deleteColumn;
 
     @FXML
     private Label messageLabel;
 
-    private CourseService courseService;
     private ReviewService reviewService;
     private UserService userService;
-    private Stage primaryStage;
+    private Navigator navigator;
+    // Created by the first refresh, on the JavaFX thread, which initialize() may not run on
+    private PagedTableLoader<ReviewDetails> reviewLoader;
 
-    public void setPrimaryStage(Stage primaryStage) {
-        this.primaryStage = primaryStage;
+    @Override
+    public void setNavigator(Navigator navigator) {
+        this.navigator = navigator;
     }
 
+    @Override
     public void setServices(UserService userService, CourseService courseService, ReviewService reviewService) {
         this.reviewService = reviewService;
         this.userService = userService;
-        this.courseService = courseService;
+    }
+
+    /**
+     * Clears the last visit's message and reloads the current user's reviews.
+     */
+    @Override
+    public void refresh() {
+        if (reviewLoader == null) {
+            reviewLoader = new PagedTableLoader<>(reviewsTable, PAGE_SIZE,
+                    (lastReview, pageSize) -> reviewService.getReviewDetailsByUserPageAsync(
+                            userService.getCurrentUser().getId(), lastReview, pageSize),
+                    e -> showError("Failed to load your reviews. Please try again."));
+        }
+        messageLabel.setText("");
         loadReviews();
     }
 
     @FXML
     private void initialize() {
-        courseColumn.setCellValueFactory(data -> {
-            int courseId = data.getValue().getCourseId();
-            String courseName = getCourseNameById(courseId); // Fetch course name from the database
-            return new ReadOnlyStringWrapper(courseName);
-        });
+        courseColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().getCourseName()));
         ratingColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getRating()));
         commentColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().getComment()));
         // Referenced for DateTimeFormatter.ofPattern usage:
@@ -113,7 +123,7 @@ public class MyReviewsController {
                 }
 
                 deleteButton.setOnAction(event -> {
-                    Review review = getTableView().getItems().get(getIndex());
+                    ReviewDetails review = getTableView().getItems().get(getIndex());
                     handleDeleteReview(review);
                 });
                 setGraphic(deleteButton);
@@ -128,28 +138,23 @@ public class MyReviewsController {
 
     private void setupRowFactory() {
         reviewsTable.setRowFactory(tv -> {
-            TableRow<Review> row = new TableRow<>();
+            TableRow<ReviewDetails> row = new TableRow<>();
             row.setOnMouseClicked(event -> handleRowClick(event, row));
             return row;
         });
     }
 
-    private void handleRowClick(MouseEvent event, TableRow<Review> row) {
+    private void handleRowClick(MouseEvent event, TableRow<ReviewDetails> row) {
         if (event.getClickCount() == 2 && (!row.isEmpty())) {
-            Review selectedReview = row.getItem();
-            int courseId = selectedReview.getCourseId();
-            Course course = courseService.getCourseById(courseId).get();
-            navigateToCourseReviews(course);
+            navigateToCourseReviews(row.getItem().getCourse());
         }
     }
 
     private void loadReviews() {
-        User currentUser = userService.getCurrentUser();
-        List<Review> reviews = reviewService.getReviewsByUser(currentUser.getId());
-        reviewsTable.setItems(FXCollections.observableList(reviews));
+        reviewLoader.reload();
     }
 
-    private void handleDeleteReview(Review review) {
+    private void handleDeleteReview(ReviewDetails review) {
         Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
         alert.setTitle("Confirm Delete");
         alert.setHeaderText("Are you sure you want to delete this review?");
@@ -157,35 +162,29 @@ public class MyReviewsController {
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            Optional<String> deleteResult = reviewService.deleteReview(review.getId());
-            if (deleteResult.isPresent()) {
-                showError("Error: " + deleteResult.get());
-            } else {
-                String courseDetails = getCourseNameById(review.getCourseId());
-                // Remove review from TableView
-                reviewsTable.getItems().remove(review);
-                showSuccess("Review for " + courseDetails + " deleted successfully.");
-            }
+            reviewService.deleteReviewAsync(review.getId())
+                    .whenCompleteAsync((writeResult, error) -> {
+                        if (error != null) {
+                            showError("Error: Failed to delete the review. Please try again.");
+                            return;
+                        }
+                        Optional<String> deleteResult = writeResult.getError();
+                        if (deleteResult.isPresent()) {
+                            showError("Error: " + deleteResult.get());
+                        } else {
+                            // Remove review from TableView
+                            reviewsTable.getItems().remove(review);
+                            showSuccess("Review for " + review.getCourseName() + " deleted successfully.");
+                        }
+                    }, Platform::runLater);
         }
     }
 
     @FXML
     private void navigateToCourseSearch() {
         try {
-            // Load the Course Search FXML
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/CourseSearch.fxml"));
-            Scene courseSearchScene = new Scene(loader.load());
-
-            // Get the controller for the CourseSearch screen
-            CourseSearchController controller = loader.getController();
-
-            // Pass the necessary services to the controller
-            controller.setServices(userService, courseService, reviewService);
-            controller.setPrimaryStage(primaryStage);
-
-            // Set the new scene on the primary stage
-            primaryStage.setScene(courseSearchScene);
-        } catch (IOException e) {
+            navigator.showCourseSearch();
+        } catch (UncheckedIOException e) {
             showError("Failed to load the Course Search screen.");
         }
     }
@@ -198,16 +197,8 @@ public class MyReviewsController {
         }
 
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/CourseReviews.fxml"));
-            Scene courseReviewsScene = new Scene(loader.load());
-
-            CourseReviewsController controller = loader.getController();
-            controller.setCourseId(selectedCourse.getId());
-            controller.setServices(userService, courseService, reviewService);
-            controller.setPrimaryStage(primaryStage);
-
-            primaryStage.setScene(courseReviewsScene);
-        } catch (IOException e) {
+            navigator.showCourseReviews(selectedCourse.getId());
+        } catch (UncheckedIOException e) {
             showError("Failed to load the Course Reviews screen.");
         }
     }
@@ -222,18 +213,5 @@ public class MyReviewsController {
         messageLabel.setStyle("-fx-text-fill: green;");
     }
 
-    private String getCourseNameById(int courseId) {
-        Optional<Course> course = courseService.getCourseById(courseId);
-        if (course.isPresent()) {
-            Course c = course.get();
-            String mnemonic = c.getMnemonic();
-            String number = c.getNumber();
-            String title = c.getTitle();
-            return mnemonic + " " + number + ": " + title;
-        } else {
-            return "Unknown Course";
-        }
-    }
-
 }
 
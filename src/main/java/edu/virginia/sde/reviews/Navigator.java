@@ -0,0 +1,188 @@
+package edu.virginia.sde.reviews;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Switches the primary stage between the application's screens. Each screen's FXML is parsed once, on first use or
+ * ahead of time by {@link #parse(Screen)} and {@link #install(ParsedScreen)}, and its view and controller are kept;
+ * after that, showing a screen asks its controller to {@link ScreenController#refresh() refresh} and swaps it in as
+ * the root of the stage's one Scene, so no navigation parses FXML or builds a scene graph again.
+ * <p>
+ * Only {@link #parse(Screen)} may be called off the JavaFX application thread; every other method must be called on
+ * it.
+ */
+public class Navigator {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    /**
+     * A screen and the type of its controller.
+     */
+    public static final class Screen<C extends ScreenController> {
+        public static final Screen<LoginController> LOGIN = new Screen<>("login.fxml", LoginController.class);
+        public static final Screen<CourseSearchController> COURSE_SEARCH =
+                new Screen<>("CourseSearch.fxml", CourseSearchController.class);
+        public static final Screen<CourseReviewsController> COURSE_REVIEWS =
+                new Screen<>("CourseReviews.fxml", CourseReviewsController.class);
+        public static final Screen<MyReviewsController> MY_REVIEWS =
+                new Screen<>("MyReviews.fxml", MyReviewsController.class);
+
+        private final String fxml;
+        private final Class<C> controllerType;
+
+        private Screen(String fxml, Class<C> controllerType) {
+            this.fxml = fxml;
+            this.controllerType = controllerType;
+        }
+
+        public String getFxml() {
+            return fxml;
+        }
+
+        @Override
+        public String toString() {
+            return fxml;
+        }
+    }
+
+    /**
+     * Every screen but the login screen, which is shown first and so never worth preloading.
+     */
+    public static final List<Screen<?>> SCREENS_AFTER_LOGIN =
+            List.of(Screen.COURSE_SEARCH, Screen.COURSE_REVIEWS, Screen.MY_REVIEWS);
+
+    /**
+     * A screen's parsed FXML, whose controller is not wired to the services yet.
+     */
+    public static final class ParsedScreen {
+        private final Screen<?> screen;
+        private final Parent root;
+        private final ScreenController controller;
+
+        private ParsedScreen(Screen<?> screen, Parent root, ScreenController controller) {
+            this.screen = screen;
+            this.root = root;
+            this.controller = controller;
+        }
+    }
+
+    private static class View {
+        private final Parent root;
+        private final ScreenController controller;
+
+        View(Parent root, ScreenController controller) {
+            this.root = root;
+            this.controller = controller;
+        }
+    }
+
+    private final Stage primaryStage;
+    private final UserService userService;
+    private final CourseService courseService;
+    private final ReviewService reviewService;
+    // JavaFX thread only, like the rest of the navigator's state; preloads parse elsewhere but install here
+    private final Map<Screen<?>, View> views = new HashMap<>();
+    // Created by the first show; JavaFX thread only
+    private Scene scene;
+
+    public Navigator(Stage primaryStage, UserService userService, CourseService courseService,
+                     ReviewService reviewService) {
+        this.primaryStage = primaryStage;
+        this.userService = userService;
+        this.courseService = courseService;
+        this.reviewService = reviewService;
+    }
+
+    /**
+     * Parses a screen's FXML ahead of time, so that showing it later takes no parsing at all. Safe to call off the
+     * JavaFX application thread: the view is not attached to a scene yet, and controllers leave everything that must
+     * live on the JavaFX thread to their first {@link ScreenController#refresh() refresh}. Pass the result to
+     * {@link #install(ParsedScreen)} on the JavaFX thread.
+     *
+     * @throws UncheckedIOException if the FXML cannot be loaded
+     */
+    public ParsedScreen parse(Screen<?> screen) {
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("/edu/virginia/sde/reviews/" + screen.fxml));
+        try {
+            Parent root = loader.load();
+            return new ParsedScreen(screen, root, screen.controllerType.cast(loader.getController()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + screen.fxml, e);
+        }
+    }
+
+    /**
+     * Wires a preloaded screen's controller to the services and keeps the screen for showing; does nothing if the
+     * screen was loaded in the meantime, e.g. because the user got to it before the preload finished.
+     */
+    public void install(ParsedScreen parsed) {
+        views.computeIfAbsent(parsed.screen, screen -> wire(parsed));
+    }
+
+    /**
+     * @return the screen's controller, loading the screen if it has not been loaded yet
+     * @throws UncheckedIOException if the FXML cannot be loaded
+     */
+    public <C extends ScreenController> C getController(Screen<C> screen) {
+        return screen.controllerType.cast(view(screen).controller);
+    }
+
+    public void showLogin() {
+        show(Screen.LOGIN);
+    }
+
+    public void showCourseSearch() {
+        show(Screen.COURSE_SEARCH);
+    }
+
+    public void showMyReviews() {
+        show(Screen.MY_REVIEWS);
+    }
+
+    public void showCourseReviews(int courseId) {
+        getController(Screen.COURSE_REVIEWS).setCourseId(courseId);
+        show(Screen.COURSE_REVIEWS);
+    }
+
+    /**
+     * Refreshes the screen's controller and puts its view on the stage.
+     *
+     * @throws UncheckedIOException if the FXML cannot be loaded
+     */
+    private void show(Screen<?> screen) {
+        View view = view(screen);
+        view.controller.refresh();
+        if (scene == null) {
+            scene = new Scene(view.root, WIDTH, HEIGHT);
+            primaryStage.setScene(scene);
+        } else if (scene.getRoot() != view.root) {
+            scene.setRoot(view.root);
+        }
+        primaryStage.show();
+    }
+
+    private View view(Screen<?> screen) {
+        View view = views.get(screen);
+        if (view == null) {
+            // Not preloaded (or its preload has not finished), so parse it here; a late preload then finds it installed
+            view = wire(parse(screen));
+            views.put(screen, view);
+        }
+        return view;
+    }
+
+    private View wire(ParsedScreen parsed) {
+        parsed.controller.setServices(userService, courseService, reviewService);
+        parsed.controller.setNavigator(this);
+        return new View(parsed.root, parsed.controller);
+    }
+}
@@ -0,0 +1,139 @@
+package edu.virginia.sde.reviews;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableView;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Fills a TableView one keyset page at a time: the first page is loaded on {@link #reload()}, and the next page is
+ * fetched in the background whenever the user scrolls near the bottom of what has been loaded so far. While the loaded
+ * rows are too few to need a scroll bar, further pages are fetched straight away until they fill the table or run out.
+ * This keeps first paint and memory proportional to what the user has actually looked at rather than to the size of
+ * the table.
+ * <p>
+ * All methods must be called on the JavaFX application thread.
+ */
+public class PagedTableLoader<T> {
+    /**
+     * Fetches the page that comes after {@code lastItem} ({@code null} for the first page).
+     */
+    @FunctionalInterface
+    public interface PageFetcher<T> {
+        CompletableFuture<List<T>> fetchPage(T lastItem, int pageSize);
+    }
+
+    // Start fetching the next page once the user has scrolled through this fraction of the loaded rows
+    private static final double PREFETCH_THRESHOLD = 0.8;
+
+    private final TableView<T> table;
+    private final int pageSize;
+    private final PageFetcher<T> fetcher;
+    private final Consumer<Throwable> onError;
+    private ObservableList<T> items = FXCollections.observableArrayList();
+    private boolean loading = false;
+    private boolean exhausted = false;
+    // The table's vertical scroll bar, once its skin has been created
+    private ScrollBar scrollBar;
+    // Bumped on every reload/cancel so pages requested for an older listing are dropped when they arrive
+    private int generation = 0;
+
+    public PagedTableLoader(TableView<T> table, int pageSize, PageFetcher<T> fetcher, Consumer<Throwable> onError) {
+        this.table = table;
+        this.pageSize = pageSize;
+        this.fetcher = fetcher;
+        this.onError = onError;
+        table.skinProperty().addListener((observable, oldSkin, newSkin) -> attachToScrollBar());
+        // A taller table may have room for more rows; checked once the layout pass that resized it is over
+        table.heightProperty().addListener((observable, oldHeight, newHeight) -> Platform.runLater(this::fillTable));
+        attachToScrollBar();
+    }
+
+    /**
+     * Replaces the table's items with a fresh, empty list and loads the first page into it.
+     */
+    public void reload() {
+        cancel();
+        items = FXCollections.observableArrayList();
+        exhausted = false;
+        table.setItems(items);
+        loadNextPage();
+    }
+
+    /**
+     * Stops any page that is still loading from being added, e.g. because the table now shows something else.
+     */
+    public void cancel() {
+        generation++;
+        loading = false;
+    }
+
+    private void loadNextPage() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        int requestGeneration = generation;
+        T lastItem = items.isEmpty() ? null : items.get(items.size() - 1);
+        fetcher.fetchPage(lastItem, pageSize)
+                .thenAcceptAsync(page -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    loading = false;
+                    exhausted = page.size() < pageSize;
+                    items.addAll(page);
+                    fillTable();
+                }, Platform::runLater)
+                .exceptionally(e -> {
+                    Platform.runLater(() -> {
+                        if (requestGeneration == generation) {
+                            loading = false;
+                            onError.accept(e);
+                        }
+                    });
+                    return null;
+                });
+    }
+
+    /**
+     * Fetches another page if the rows loaded so far fit without scrolling, since the user then has no scroll bar to
+     * move and the scroll listener would never ask for more.
+     */
+    private void fillTable() {
+        // Until the table has been sized, its scroll bar says nothing about how many rows fit; the first page of a
+        // listing is left to reload()
+        if (scrollBar == null || table.getHeight() <= 0 || items.isEmpty() || loading || exhausted) {
+            return;
+        }
+        // Lay out now so the scroll bar's visibility reflects the rows just added
+        table.layout();
+        if (!scrollBar.isVisible()) {
+            loadNextPage();
+        }
+    }
+
+    private void attachToScrollBar() {
+        if (scrollBar != null) {
+            return;
+        }
+        for (Node node : table.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar candidate && candidate.getOrientation() == Orientation.VERTICAL) {
+                scrollBar = candidate;
+                scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+                    if (newValue.doubleValue() >= scrollBar.getMax() * PREFETCH_THRESHOLD) {
+                        loadNextPage();
+                    }
+                });
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package edu.virginia.sde.reviews;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The per-query statistics of one {@link DatabaseConnection}. Each query name gets a {@link QueryStats} the first
+ * time it runs, which is also registered with the platform MBean server as
+ * {@code edu.virginia.sde.reviews:type=Query,database=<file>,name=<query name>}, so it can be watched with JConsole,
+ * VisualVM or any other JMX client. Commits and rollbacks are published the same way with {@code type=Transaction}.
+ */
+public class QueryMetrics {
+    static final String DOMAIN = "edu.virginia.sde.reviews";
+
+    private final String database;
+    private final Map<String, QueryStats> queries = new ConcurrentHashMap<>();
+    private final QueryStats commits = new QueryStats("commit");
+    private final QueryStats rollbacks = new QueryStats("rollback");
+    private final List<ObjectName> registeredNames = Collections.synchronizedList(new ArrayList<>());
+
+    public QueryMetrics(String database) {
+        this.database = database;
+        register("Transaction", commits);
+        register("Transaction", rollbacks);
+    }
+
+    public QueryStats query(String queryName) {
+        return queries.computeIfAbsent(queryName, name -> {
+            QueryStats stats = new QueryStats(name);
+            register("Query", stats);
+            return stats;
+        });
+    }
+
+    public QueryStats commits() {
+        return commits;
+    }
+
+    public QueryStats rollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * @return the statistics of every query that has run, by name
+     */
+    public Map<String, QueryStats> getQueries() {
+        return new TreeMap<>(queries);
+    }
+
+    /**
+     * The number of rows a query returned or changed, judged from what its {@link SqlWork} returned: the size of a
+     * collection or map, 0 or 1 for an Optional, an update count, or 1 for any other non-null result.
+     */
+    static long rowCount(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Map<?, ?> map) {
+            return map.size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof OptionalInt optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof Integer || result instanceof Long) {
+            return Math.max(0, ((Number) result).longValue());
+        }
+        if (result instanceof int[] updateCounts) {
+            long rows = 0;
+            for (int updateCount : updateCounts) {
+                rows += Math.max(0, updateCount);
+            }
+            return rows;
+        }
+        return 1;
+    }
+
+    /**
+     * Removes this connection's MBeans from the platform MBean server.
+     */
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registeredNames) {
+            for (ObjectName name : registeredNames) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (JMException e) {
+                    System.err.println("Failed to unregister " + name + ": " + e.getMessage());
+                }
+            }
+            registeredNames.clear();
+        }
+    }
+
+    private void register(String type, QueryStats stats) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type
+                    + ",database=" + ObjectName.quote(database)
+                    + ",name=" + ObjectName.quote(stats.getName()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats, name);
+            registeredNames.add(name);
+        } catch (JMException e) {
+            // e.g. a second connection to the same file; its statistics are still collected, just not published
+            System.err.println("Failed to publish query statistics for " + stats.getName() + ": " + e.getMessage());
+        }
+    }
+}
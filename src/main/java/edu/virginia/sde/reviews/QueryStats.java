@@ -0,0 +1,98 @@
+package edu.virginia.sde.reviews;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, row count, error count and latency histogram for one named query. Safe to update from any thread.
+ */
+public class QueryStats implements QueryStatsMXBean {
+    private final String name;
+    private final LatencyHistogram latencyNanos = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public QueryStats(String name) {
+        this.name = name;
+    }
+
+    void recordSuccess(long elapsedNanos, long rowCount) {
+        latencyNanos.record(elapsedNanos);
+        rows.add(rowCount);
+    }
+
+    void recordError(long elapsedNanos) {
+        latencyNanos.record(elapsedNanos);
+        errors.increment();
+    }
+
+    public LatencyHistogram getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCallCount() {
+        return latencyNanos.getCount();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latencyNanos.getMean() / 1_000_000.0;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentileMillis(50);
+    }
+
+    @Override
+    public double getP95Millis() {
+        return percentileMillis(95);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileMillis(99);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return percentileMillis(99.9);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latencyNanos.getMax() / 1_000_000.0;
+    }
+
+    @Override
+    public void reset() {
+        latencyNanos.reset();
+        rows.reset();
+        errors.reset();
+    }
+
+    private double percentileMillis(double percentile) {
+        return latencyNanos.getValueAtPercentile(percentile) / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d calls, %d rows, %d errors, p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                name, getCallCount(), getRowCount(), getErrorCount(), getP50Millis(), getP99Millis(), getMaxMillis());
+    }
+}
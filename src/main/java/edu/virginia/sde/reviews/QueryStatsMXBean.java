@@ -0,0 +1,32 @@
+package edu.virginia.sde.reviews;
+
+/**
+ * Management interface for the statistics of one named query (or of commits/rollbacks), as published over JMX by
+ * {@link QueryMetrics}. Latencies cover executing the query and reading its results, not waiting for a connection.
+ */
+public interface QueryStatsMXBean {
+    String getName();
+
+    long getCallCount();
+
+    /**
+     * @return rows returned by reads, or rows changed by writes, summed over every call
+     */
+    long getRowCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    void reset();
+}
@@ -0,0 +1,360 @@
+package edu.virginia.sde.reviews;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+
+/**
+ * Every course's 1-5 rating histogram, held in one flat {@code int[]} indexed by CourseID, so that a course's review
+ * count, mean, median, distribution and Bayesian score are each a handful of array reads, and ranking the whole
+ * catalog needs no database work at all.
+ * <p>
+ * Reads never lock. Updates replace a course's whole histogram and are serialized; a reader racing an update may see
+ * the histogram from just before it. Updates may carry a version, so that ones applied out of order cannot overwrite
+ * newer data.
+ * <p>
+ * The Bayesian score, {@code (C * m + ratingSum) / (C + reviewCount)}, shrinks each course's mean towards the mean
+ * {@code m} of every review in the catalog as if the course had {@code C} extra reviews at that mean. A single 5-star
+ * review therefore ranks below forty reviews averaging 4.8, and an unreviewed course scores exactly {@code m}.
+ */
+public class RatingHistogramIndex {
+    public static final double DEFAULT_PRIOR_WEIGHT = 5.0;
+    /**
+     * The largest CourseID the index holds. Its array is sized by the largest id rather than by the number of courses,
+     * so this keeps one stray id from costing gigabytes, and {@code courseId * 5} from overflowing.
+     */
+    public static final int MAX_COURSE_ID = (1 << 22) - 1;
+
+    private static final int RATINGS = 5;
+    // The prior mean before anything has been reviewed: the middle of the scale
+    private static final double NEUTRAL_RATING = 3.0;
+
+    private final double priorWeight;
+    // counts[courseId * 5 + rating - 1]; reassigned (even to the same array) after every update, so reading the field
+    // first makes the update's element writes visible
+    private volatile int[] counts = new int[0];
+    private volatile double priorMean = NEUTRAL_RATING;
+    // The version of each course's last versioned update, indexed by CourseID; guarded by this
+    private long[] versions = new long[0];
+    // Catalog-wide totals behind priorMean; guarded by this
+    private long totalReviews = 0;
+    private long totalRatingSum = 0;
+
+    public RatingHistogramIndex() {
+        this(DEFAULT_PRIOR_WEIGHT);
+    }
+
+    /**
+     * @param priorWeight how many reviews' worth of the catalog mean each course's Bayesian score starts from
+     */
+    public RatingHistogramIndex(double priorWeight) {
+        if (!(priorWeight >= 0)) {
+            throw new IllegalArgumentException("Prior weight cannot be negative");
+        }
+        this.priorWeight = priorWeight;
+    }
+
+    /**
+     * Replaces a course's histogram with the given stats.
+     *
+     * @throws IllegalArgumentException if the course id is negative or above {@link #MAX_COURSE_ID}
+     */
+    public synchronized void put(CourseStats stats) {
+        int courseId = checkCourseId(stats.getCourseId());
+        int[] updated = counts;
+        int base = courseId * RATINGS;
+        if (base + RATINGS > updated.length) {
+            int length = Math.min(Math.max(base + RATINGS, updated.length * 2), (MAX_COURSE_ID + 1) * RATINGS);
+            updated = Arrays.copyOf(updated, length);
+        }
+        for (int rating = 1; rating <= RATINGS; rating++) {
+            int count = stats.getRatingCount(rating);
+            int delta = count - updated[base + rating - 1];
+            totalReviews += delta;
+            totalRatingSum += (long) delta * rating;
+            updated[base + rating - 1] = count;
+        }
+        priorMean = totalReviews == 0 ? NEUTRAL_RATING : (double) totalRatingSum / totalReviews;
+        counts = updated;
+    }
+
+    /**
+     * Replaces a course's histogram with the given stats unless the index already holds a version of them at least as
+     * new.
+     *
+     * @param version orders the updates of a course; larger is newer
+     * @return whether the stats were applied
+     * @throws IllegalArgumentException if the course id is negative or above {@link #MAX_COURSE_ID}
+     */
+    public synchronized boolean putIfNewer(CourseStats stats, long version) {
+        int courseId = checkCourseId(stats.getCourseId());
+        if (courseId >= versions.length) {
+            int length = Math.min(Math.max(courseId + 1, versions.length * 2), MAX_COURSE_ID + 1);
+            versions = Arrays.copyOf(versions, length);
+        } else if (versions[courseId] >= version) {
+            return false;
+        }
+        versions[courseId] = version;
+        put(stats);
+        return true;
+    }
+
+    public void putAll(Iterable<CourseStats> allStats) {
+        for (CourseStats stats : allStats) {
+            put(stats);
+        }
+    }
+
+    public int getReviewCount(int courseId) {
+        int[] snapshot = counts;
+        int base = baseOf(snapshot, courseId);
+        return base < 0 ? 0 : (int) reviewCount(snapshot, base);
+    }
+
+    /**
+     * @return how many reviews gave the course each rating: element 0 counts 1-star reviews, element 4 5-star ones
+     */
+    public int[] getDistribution(int courseId) {
+        int[] snapshot = counts;
+        int base = baseOf(snapshot, courseId);
+        return base < 0 ? new int[RATINGS] : Arrays.copyOfRange(snapshot, base, base + RATINGS);
+    }
+
+    /**
+     * @return the course's mean rating, or empty if it has no reviews
+     */
+    public OptionalDouble getMean(int courseId) {
+        int[] snapshot = counts;
+        int base = baseOf(snapshot, courseId);
+        long reviewCount = base < 0 ? 0 : reviewCount(snapshot, base);
+        if (reviewCount == 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of((double) ratingSum(snapshot, base) / reviewCount);
+    }
+
+    /**
+     * @return the course's median rating (halfway between the two middle ratings when there is an even number of
+     * reviews), or empty if it has no reviews
+     */
+    public OptionalDouble getMedian(int courseId) {
+        int[] snapshot = counts;
+        int base = baseOf(snapshot, courseId);
+        long reviewCount = base < 0 ? 0 : reviewCount(snapshot, base);
+        if (reviewCount == 0) {
+            return OptionalDouble.empty();
+        }
+        int lower = ratingAtRank(snapshot, base, (reviewCount - 1) / 2);
+        int upper = ratingAtRank(snapshot, base, reviewCount / 2);
+        return OptionalDouble.of((lower + upper) / 2.0);
+    }
+
+    /**
+     * @return the course's mean rating shrunk towards the catalog mean, as described on the class; the catalog mean
+     * itself for a course without reviews
+     */
+    public double getBayesianScore(int courseId) {
+        return bayesianScore(counts, courseId, priorMean);
+    }
+
+    /**
+     * @return the mean of every review in the catalog, which the Bayesian scores are shrunk towards
+     */
+    public double getCatalogMean() {
+        return priorMean;
+    }
+
+    public CourseStats getCourseStats(int courseId) {
+        int[] snapshot = counts;
+        int base = baseOf(snapshot, courseId);
+        if (base < 0) {
+            return CourseStats.empty(courseId);
+        }
+        return new CourseStats(courseId, (int) reviewCount(snapshot, base), ratingSum(snapshot, base),
+                Arrays.copyOfRange(snapshot, base, base + RATINGS));
+    }
+
+    /**
+     * What a ranking puts first.
+     */
+    public enum Ranking {
+        /**
+         * Highest Bayesian score, then most reviews.
+         */
+        SCORE,
+        /**
+         * Most reviews, then highest Bayesian score.
+         */
+        REVIEW_COUNT
+    }
+
+    /**
+     * Orders courses best first, breaking the remaining ties by id. Every score is taken from the same snapshot of
+     * the index, so updates made while sorting cannot make the order inconsistent.
+     *
+     * @return the given ids in ranked order
+     */
+    public int[] rank(int[] courseIds, Ranking ranking) {
+        return top(courseIds, courseIds.length, ranking);
+    }
+
+    /**
+     * The best {@code k} of the given courses, found with a bounded heap in O(n log k) time from one snapshot of the
+     * index, so it costs a single pass over primitive arrays however many reviews the courses have.
+     *
+     * @return at most {@code k} of the given ids, best first
+     */
+    public int[] top(int[] courseIds, int k, Ranking ranking) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative");
+        }
+        int[] snapshot = counts;
+        double mean = priorMean;
+        double[] scores = new double[courseIds.length];
+        long[] reviewCounts = new long[courseIds.length];
+        for (int i = 0; i < courseIds.length; i++) {
+            int base = baseOf(snapshot, courseIds[i]);
+            scores[i] = bayesianScore(snapshot, courseIds[i], mean);
+            reviewCounts[i] = base < 0 ? 0 : reviewCount(snapshot, base);
+        }
+        int size = Math.min(k, courseIds.length);
+        // The best k seen so far, as a binary heap of positions in courseIds with the worst at the root, ready to be
+        // displaced; plain ints, so no position is ever boxed
+        int[] heap = new int[size];
+        int heapSize = 0;
+        for (int i = 0; i < courseIds.length && size > 0; i++) {
+            if (heapSize < size) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, courseIds, scores, reviewCounts, ranking);
+            } else if (compare(i, heap[0], courseIds, scores, reviewCounts, ranking) < 0) {
+                heap[0] = i;
+                siftDown(heap, heapSize, courseIds, scores, reviewCounts, ranking);
+            }
+        }
+        // Removing the worst each time fills the result from the back
+        int[] ranked = new int[heapSize];
+        while (heapSize > 0) {
+            ranked[heapSize - 1] = courseIds[heap[0]];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, courseIds, scores, reviewCounts, ranking);
+        }
+        return ranked;
+    }
+
+    /**
+     * Orders two positions in courseIds best first: negative if {@code a} ranks above {@code b}.
+     */
+    private static int compare(int a, int b, int[] courseIds, double[] scores, long[] reviewCounts,
+                               Ranking ranking) {
+        int byScore = Double.compare(scores[b], scores[a]);
+        int byCount = Long.compare(reviewCounts[b], reviewCounts[a]);
+        int primary = ranking == Ranking.SCORE ? byScore : byCount;
+        if (primary != 0) {
+            return primary;
+        }
+        int secondary = ranking == Ranking.SCORE ? byCount : byScore;
+        return secondary != 0 ? secondary : Integer.compare(courseIds[a], courseIds[b]);
+    }
+
+    /**
+     * Moves the entry at {@code child} up until its parent ranks below it.
+     */
+    private static void siftUp(int[] heap, int child, int[] courseIds, double[] scores, long[] reviewCounts,
+                               Ranking ranking) {
+        int entry = heap[child];
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (compare(heap[parent], entry, courseIds, scores, reviewCounts, ranking) >= 0) {
+                break;
+            }
+            heap[child] = heap[parent];
+            child = parent;
+        }
+        heap[child] = entry;
+    }
+
+    /**
+     * Moves the root down until both its children rank above it.
+     */
+    private static void siftDown(int[] heap, int heapSize, int[] courseIds, double[] scores, long[] reviewCounts,
+                                 Ranking ranking) {
+        if (heapSize == 0) {
+            return;
+        }
+        int entry = heap[0];
+        int parent = 0;
+        int child;
+        while ((child = 2 * parent + 1) < heapSize) {
+            // The worse of the two children
+            if (child + 1 < heapSize
+                    && compare(heap[child + 1], heap[child], courseIds, scores, reviewCounts, ranking) > 0) {
+                child++;
+            }
+            if (compare(heap[child], entry, courseIds, scores, reviewCounts, ranking) <= 0) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = entry;
+    }
+
+    private double bayesianScore(int[] snapshot, int courseId, double mean) {
+        int base = baseOf(snapshot, courseId);
+        long reviewCount = base < 0 ? 0 : reviewCount(snapshot, base);
+        if (reviewCount == 0) {
+            return mean;
+        }
+        return (priorWeight * mean + ratingSum(snapshot, base)) / (priorWeight + reviewCount);
+    }
+
+    private static int checkCourseId(int courseId) {
+        if (courseId < 0) {
+            throw new IllegalArgumentException("Course ids cannot be negative");
+        }
+        if (courseId > MAX_COURSE_ID) {
+            throw new IllegalArgumentException("Course id " + courseId + " is above the index's maximum of "
+                    + MAX_COURSE_ID);
+        }
+        return courseId;
+    }
+
+    /**
+     * @return where the course's histogram starts in the snapshot, or -1 if the index has never held it
+     */
+    private static int baseOf(int[] snapshot, int courseId) {
+        if (courseId < 0 || (long) courseId * RATINGS + RATINGS > snapshot.length) {
+            return -1;
+        }
+        return courseId * RATINGS;
+    }
+
+    private static long reviewCount(int[] snapshot, int base) {
+        long reviewCount = 0;
+        for (int i = 0; i < RATINGS; i++) {
+            reviewCount += snapshot[base + i];
+        }
+        return reviewCount;
+    }
+
+    private static long ratingSum(int[] snapshot, int base) {
+        long ratingSum = 0;
+        for (int i = 0; i < RATINGS; i++) {
+            ratingSum += (long) snapshot[base + i] * (i + 1);
+        }
+        return ratingSum;
+    }
+
+    /**
+     * @param rank 0-based position in the course's reviews sorted by rating
+     */
+    private static int ratingAtRank(int[] snapshot, int base, long rank) {
+        long seen = 0;
+        for (int i = 0; i < RATINGS; i++) {
+            seen += snapshot[base + i];
+            if (rank < seen) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Rank is past the last review");
+    }
+}
@@ -2,128 +2,424 @@ package edu.virginia.sde.reviews;
 
 import java.sql.*;
 import java.util.*;
+import java.util.stream.Stream;
 
 public class ReviewDatabase {
 
+    // Keeps the IN (...) list of the batched stats query well under SQLite's bound-parameter limit
+    private static final int STATS_BATCH_SIZE = 500;
+
     private final DatabaseConnection databaseConnection;
 
     public ReviewDatabase(DatabaseConnection databaseConnection) {
         this.databaseConnection = databaseConnection;
     }
 
-    public void addReview(Review review) throws SQLException {
-        Connection connection = databaseConnection.getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                INSERT INTO Reviews (UserID, CourseID, Rating, Comment, Timestamp)
-                    VALUES(?, ?, ?, ?, ?);
-                """)) {
+    /**
+     * Inserts the review in one statement, relying on the UniqueReview constraint rather than a prior lookup to reject
+     * a second review of the same course by the same user. On success the review's id is set to the new ReviewID, once
+     * the insert has committed.
+     *
+     * @return false if the user has already reviewed the course
+     */
+    public boolean addReview(Review review) throws SQLException {
+        OptionalInt reviewId = insertReview(review);
+        reviewId.ifPresent(review::setId);
+        return reviewId.isPresent();
+    }
+
+    /**
+     * Inserts the review like {@link #addReview(Review)}, but leaves setting its id to the caller, e.g. for when the
+     * insert joins a transaction that has yet to commit.
+     *
+     * @return the new ReviewID, or empty if the user has already reviewed the course
+     */
+    public OptionalInt insertReview(Review review) throws SQLException {
+        return databaseConnection.write("ReviewDatabase.addReview", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    INSERT INTO Reviews (UserID, CourseID, Rating, Comment, Timestamp)
+                        VALUES(?, ?, ?, ?, ?)
+                    ON CONFLICT (UserID, CourseID) DO NOTHING
+                    RETURNING ReviewID;
+                    """);
             stmt.setInt(1, review.getUserId());
             stmt.setInt(2, review.getCourseId());
             stmt.setInt(3, review.getRating());
             stmt.setString(4, review.getComment());
             stmt.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
-            stmt.executeUpdate();
-            databaseConnection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
-        }
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next() ? OptionalInt.of(resultSet.getInt("ReviewID")) : OptionalInt.empty();
+            }
+        });
     }
 
-    public void updateReview(Review review) throws SQLException {
-        Connection connection = databaseConnection.getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                UPDATE Reviews
-                SET Rating = ?, Comment = ?, Timestamp = ?
-                WHERE ReviewID = ?;
-                """)) {
+    /**
+     * @return the CourseID of the updated review, or empty if there is no review with the given id
+     */
+    public OptionalInt updateReview(Review review) throws SQLException {
+        return databaseConnection.write("ReviewDatabase.updateReview", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    UPDATE Reviews
+                    SET Rating = ?, Comment = ?, Timestamp = ?
+                    WHERE ReviewID = ?
+                    RETURNING CourseID;
+                    """);
             stmt.setInt(1, review.getRating());
             stmt.setString(2, review.getComment());
             stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
             stmt.setInt(4, review.getId());
-            stmt.executeUpdate();
-            databaseConnection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
-        }
+            return readCourseId(stmt);
+        });
     }
 
-    public void deleteReview(int reviewId) throws SQLException {
-        Connection connection = databaseConnection.getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                DELETE FROM Reviews WHERE ReviewID = ?;
-                """)) {
+    /**
+     * @return the CourseID of the deleted review, or empty if there is no review with the given id
+     */
+    public OptionalInt deleteReview(int reviewId) throws SQLException {
+        return databaseConnection.write("ReviewDatabase.deleteReview", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    DELETE FROM Reviews WHERE ReviewID = ?
+                    RETURNING CourseID;
+                    """);
             stmt.setInt(1, reviewId);
-            stmt.executeUpdate();
-            databaseConnection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
+            return readCourseId(stmt);
+        });
+    }
+
+    private OptionalInt readCourseId(PreparedStatement stmt) throws SQLException {
+        try (ResultSet resultSet = stmt.executeQuery()) {
+            return resultSet.next() ? OptionalInt.of(resultSet.getInt("CourseID")) : OptionalInt.empty();
         }
     }
 
+    public boolean reviewExists(int userId, int courseId) throws SQLException {
+        return databaseConnection.read("ReviewDatabase.reviewExists", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT 1 FROM Reviews WHERE UserID = ? AND CourseID = ?;
+                    """);
+            stmt.setInt(1, userId);
+            stmt.setInt(2, courseId);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next();
+            }
+        });
+    }
+
     public List<Review> getReviewsByCourseId(int courseId) throws SQLException {
-        Connection connection = databaseConnection.getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                SELECT * FROM Reviews WHERE CourseID = ?;
-                """)) {
+        return databaseConnection.read("ReviewDatabase.getReviewsByCourseId", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews WHERE CourseID = ?;
+                    """);
             stmt.setInt(1, courseId);
-            ResultSet resultSet = stmt.executeQuery();
-
-            List<Review> reviews = new ArrayList<>();
-            while (resultSet.next()) {
-                int id = resultSet.getInt("ReviewID");
-                int userId = resultSet.getInt("UserID");
-                int rating = resultSet.getInt("Rating");
-                String comment = resultSet.getString("Comment");
-                Timestamp timestamp = resultSet.getTimestamp("Timestamp");
-                reviews.add(new Review(id, courseId, userId, rating, comment, timestamp));
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                List<Review> reviews = new ArrayList<>();
+                while (resultSet.next()) {
+                    reviews.add(readReview(resultSet));
+                }
+                return reviews;
             }
-            return reviews;
-        }
+        });
     }
 
     public Optional<Review> getReviewById(int reviewId) throws SQLException {
-        Connection connection = databaseConnection.getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                SELECT * FROM Reviews WHERE ReviewID = ?;
-                """)) {
+        return databaseConnection.read("ReviewDatabase.getReviewById", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews WHERE ReviewID = ?;
+                    """);
             stmt.setInt(1, reviewId);
-            ResultSet resultSet = stmt.executeQuery();
-
-            if (resultSet.next()) {
-                int id = resultSet.getInt("ReviewID");
-                int courseId = resultSet.getInt("CourseID");
-                int userId = resultSet.getInt("UserID");
-                int rating = resultSet.getInt("Rating");
-                String comment = resultSet.getString("Comment");
-                Timestamp timestamp = resultSet.getTimestamp("Timestamp");
-                return Optional.of(new Review(id, courseId, userId, rating, comment, timestamp));
-            } else {
-                return Optional.empty();
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (resultSet.next()) {
+                    return Optional.of(readReview(resultSet));
+                } else {
+                    return Optional.empty();
+                }
             }
-        }
+        });
     }
 
     public List<Review> getReviewsByUserId(int userId) throws SQLException {
-        Connection connection = databaseConnection.getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement("""
-                SELECT * FROM Reviews WHERE UserID = ?;
-                """)) {
+        return databaseConnection.read("ReviewDatabase.getReviewsByUserId", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews WHERE UserID = ?;
+                    """);
+            stmt.setInt(1, userId);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                List<Review> reviews = new ArrayList<>();
+                while (resultSet.next()) {
+                    reviews.add(readReview(resultSet));
+                }
+                return reviews;
+            }
+        });
+    }
+
+    /**
+     * Every review of a course, newest first, read lazily; close the stream (try-with-resources) when done.
+     */
+    public Stream<Review> streamReviewsByCourseId(int courseId) throws SQLException {
+        return databaseConnection.stream("ReviewDatabase.streamReviewsByCourseId", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews WHERE CourseID = ?
+                    ORDER BY Timestamp DESC, ReviewID DESC;
+                    """);
+            stmt.setInt(1, courseId);
+            return stmt.executeQuery();
+        }, this::readReview);
+    }
+
+    /**
+     * Every review by a user, newest first, read lazily; close the stream (try-with-resources) when done.
+     */
+    public Stream<Review> streamReviewsByUserId(int userId) throws SQLException {
+        return databaseConnection.stream("ReviewDatabase.streamReviewsByUserId", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews WHERE UserID = ?
+                    ORDER BY Timestamp DESC, ReviewID DESC;
+                    """);
+            stmt.setInt(1, userId);
+            return stmt.executeQuery();
+        }, this::readReview);
+    }
+
+    /**
+     * Every review in ReviewID order, read lazily; close the stream (try-with-resources) when done.
+     */
+    public Stream<Review> streamAllReviews() throws SQLException {
+        return databaseConnection.stream("ReviewDatabase.streamAllReviews", statements -> statements.prepare("""
+                SELECT * FROM Reviews ORDER BY ReviewID;
+                """).executeQuery(), this::readReview);
+    }
+
+    /**
+     * Keyset-paginated reviews of a course, newest first.
+     *
+     * @param after the last review of the previous page, or null for the first page
+     * @param limit page size
+     */
+    public List<Review> getReviewsByCourseIdPage(int courseId, Review after, int limit) throws SQLException {
+        if (after == null) {
+            return databaseConnection.read("ReviewDatabase.getReviewsByCourseIdPage", statements -> {
+                PreparedStatement stmt = statements.prepare("""
+                        SELECT * FROM Reviews
+                        WHERE CourseID = ?
+                        ORDER BY Timestamp DESC, ReviewID DESC
+                        LIMIT ?;
+                        """);
+                stmt.setInt(1, courseId);
+                stmt.setInt(2, limit);
+                return readReviews(stmt);
+            });
+        }
+        return databaseConnection.read("ReviewDatabase.getReviewsByCourseIdPage", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews
+                    WHERE CourseID = ? AND (Timestamp, ReviewID) < (?, ?)
+                    ORDER BY Timestamp DESC, ReviewID DESC
+                    LIMIT ?;
+                    """);
+            stmt.setInt(1, courseId);
+            stmt.setTimestamp(2, after.getTimestamp());
+            stmt.setInt(3, after.getId());
+            stmt.setInt(4, limit);
+            return readReviews(stmt);
+        });
+    }
+
+    /**
+     * Keyset-paginated reviews written by a user, newest first.
+     *
+     * @param after the last review of the previous page, or null for the first page
+     * @param limit page size
+     */
+    public List<Review> getReviewsByUserIdPage(int userId, Review after, int limit) throws SQLException {
+        if (after == null) {
+            return databaseConnection.read("ReviewDatabase.getReviewsByUserIdPage", statements -> {
+                PreparedStatement stmt = statements.prepare("""
+                        SELECT * FROM Reviews
+                        WHERE UserID = ?
+                        ORDER BY Timestamp DESC, ReviewID DESC
+                        LIMIT ?;
+                        """);
+                stmt.setInt(1, userId);
+                stmt.setInt(2, limit);
+                return readReviews(stmt);
+            });
+        }
+        return databaseConnection.read("ReviewDatabase.getReviewsByUserIdPage", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews
+                    WHERE UserID = ? AND (Timestamp, ReviewID) < (?, ?)
+                    ORDER BY Timestamp DESC, ReviewID DESC
+                    LIMIT ?;
+                    """);
             stmt.setInt(1, userId);
-            ResultSet resultSet = stmt.executeQuery();
+            stmt.setTimestamp(2, after.getTimestamp());
+            stmt.setInt(3, after.getId());
+            stmt.setInt(4, limit);
+            return readReviews(stmt);
+        });
+    }
+
+    /**
+     * Keyset-paginated reviews written by a user, newest first, each joined with its course's details so that no
+     * per-review course lookup is needed.
+     *
+     * @param after the last review of the previous page, or null for the first page
+     * @param limit page size
+     */
+    public List<ReviewDetails> getReviewDetailsByUserIdPage(int userId, Review after, int limit) throws SQLException {
+        if (after == null) {
+            return databaseConnection.read("ReviewDatabase.getReviewDetailsByUserIdPage", statements -> {
+                PreparedStatement stmt = statements.prepare("""
+                        SELECT r.*, c.SubjectMnemonic, c.CourseNumber, c.Title
+                        FROM Reviews r JOIN Courses c ON c.CourseID = r.CourseID
+                        WHERE r.UserID = ?
+                        ORDER BY r.Timestamp DESC, r.ReviewID DESC
+                        LIMIT ?;
+                        """);
+                stmt.setInt(1, userId);
+                stmt.setInt(2, limit);
+                return readReviewDetails(stmt);
+            });
+        }
+        return databaseConnection.read("ReviewDatabase.getReviewDetailsByUserIdPage", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT r.*, c.SubjectMnemonic, c.CourseNumber, c.Title
+                    FROM Reviews r JOIN Courses c ON c.CourseID = r.CourseID
+                    WHERE r.UserID = ? AND (r.Timestamp, r.ReviewID) < (?, ?)
+                    ORDER BY r.Timestamp DESC, r.ReviewID DESC
+                    LIMIT ?;
+                    """);
+            stmt.setInt(1, userId);
+            stmt.setTimestamp(2, after.getTimestamp());
+            stmt.setInt(3, after.getId());
+            stmt.setInt(4, limit);
+            return readReviewDetails(stmt);
+        });
+    }
+
+    public Optional<Review> getReviewByUserAndCourse(int userId, int courseId) throws SQLException {
+        return databaseConnection.read("ReviewDatabase.getReviewByUserAndCourse", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT * FROM Reviews WHERE UserID = ? AND CourseID = ?;
+                    """);
+            stmt.setInt(1, userId);
+            stmt.setInt(2, courseId);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (resultSet.next()) {
+                    return Optional.of(readReview(resultSet));
+                }
+                return Optional.empty();
+            }
+        });
+    }
+
+    public CourseStats getCourseStats(int courseId) throws SQLException {
+        return databaseConnection.read("ReviewDatabase.getCourseStats", statements -> {
+            PreparedStatement stmt = statements.prepare("""
+                    SELECT CourseID, ReviewCount, RatingSum, Rating1, Rating2, Rating3, Rating4, Rating5
+                    FROM CourseStats WHERE CourseID = ?;
+                    """);
+            stmt.setInt(1, courseId);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (resultSet.next()) {
+                    return readCourseStats(resultSet);
+                }
+                return CourseStats.empty(courseId);
+            }
+        });
+    }
 
+    /**
+     * Loads the rating aggregates for a whole batch of courses (e.g. one page of the search table) with one query per
+     * {@value #STATS_BATCH_SIZE} ids. Every requested id is present in the result; unreviewed courses map to empty stats.
+     */
+    public Map<Integer, CourseStats> getCourseStats(Collection<Integer> courseIds) throws SQLException {
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(courseIds));
+        Map<Integer, CourseStats> statsByCourseId = databaseConnection.read("ReviewDatabase.getCourseStatsForCourses",
+                statements -> {
+                Map<Integer, CourseStats> found = new HashMap<>();
+                for (int start = 0; start < ids.size(); start += STATS_BATCH_SIZE) {
+                    List<Integer> batch = ids.subList(start, Math.min(start + STATS_BATCH_SIZE, ids.size()));
+                    String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+                    // The SQL text depends on the batch size, so this statement is deliberately kept out of the cache
+                    try (PreparedStatement stmt = statements.getConnection().prepareStatement("""
+                            SELECT CourseID, ReviewCount, RatingSum, Rating1, Rating2, Rating3, Rating4, Rating5
+                            FROM CourseStats WHERE CourseID IN (%s);
+                            """.formatted(placeholders))) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            stmt.setInt(i + 1, batch.get(i));
+                        }
+                        try (ResultSet resultSet = stmt.executeQuery()) {
+                            while (resultSet.next()) {
+                                CourseStats stats = readCourseStats(resultSet);
+                                found.put(stats.getCourseId(), stats);
+                            }
+                        }
+                    }
+                }
+                return found;
+            });
+        for (int courseId : ids) {
+            statsByCourseId.putIfAbsent(courseId, CourseStats.empty(courseId));
+        }
+        return statsByCourseId;
+    }
+
+    /**
+     * The rating aggregates of every reviewed course, read lazily; close the stream (try-with-resources) when done.
+     */
+    public Stream<CourseStats> streamAllCourseStats() throws SQLException {
+        return databaseConnection.stream("ReviewDatabase.streamAllCourseStats", statements -> statements.prepare("""
+                SELECT CourseID, ReviewCount, RatingSum, Rating1, Rating2, Rating3, Rating4, Rating5
+                FROM CourseStats;
+                """).executeQuery(), this::readCourseStats);
+    }
+
+    private List<Review> readReviews(PreparedStatement stmt) throws SQLException {
+        try (ResultSet resultSet = stmt.executeQuery()) {
             List<Review> reviews = new ArrayList<>();
             while (resultSet.next()) {
-                int id = resultSet.getInt("ReviewID");
-                int courseId = resultSet.getInt("CourseID");
-                int rating = resultSet.getInt("Rating");
-                String comment = resultSet.getString("Comment");
-                Timestamp timestamp = resultSet.getTimestamp("Timestamp");
-                reviews.add(new Review(id, courseId, userId, rating, comment, timestamp));
+                reviews.add(readReview(resultSet));
+            }
+            return reviews;
+        }
+    }
+
+    private List<ReviewDetails> readReviewDetails(PreparedStatement stmt) throws SQLException {
+        try (ResultSet resultSet = stmt.executeQuery()) {
+            List<ReviewDetails> reviews = new ArrayList<>();
+            while (resultSet.next()) {
+                Review review = readReview(resultSet);
+                reviews.add(new ReviewDetails(review.getId(), review.getCourseId(), review.getUserId(),
+                        review.getRating(), review.getComment(), review.getTimestamp(),
+                        resultSet.getString("SubjectMnemonic"), resultSet.getString("CourseNumber"),
+                        resultSet.getString("Title")));
             }
             return reviews;
         }
     }
+
+    private Review readReview(ResultSet resultSet) throws SQLException {
+        int id = resultSet.getInt("ReviewID");
+        int courseId = resultSet.getInt("CourseID");
+        int userId = resultSet.getInt("UserID");
+        int rating = resultSet.getInt("Rating");
+        String comment = resultSet.getString("Comment");
+        Timestamp timestamp = resultSet.getTimestamp("Timestamp");
+        return new Review(id, courseId, userId, rating, comment, timestamp);
+    }
+
+    private CourseStats readCourseStats(ResultSet resultSet) throws SQLException {
+        int[] ratingCounts = new int[5];
+        for (int rating = 1; rating <= 5; rating++) {
+            ratingCounts[rating - 1] = resultSet.getInt("Rating" + rating);
+        }
+        return new CourseStats(
+                resultSet.getInt("CourseID"),
+                resultSet.getInt("ReviewCount"),
+                resultSet.getLong("RatingSum"),
+                ratingCounts
+        );
+    }
 }
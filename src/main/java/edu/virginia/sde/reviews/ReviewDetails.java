@@ -0,0 +1,43 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.Timestamp;
+
+/**
+ * A review together with the identifying details of the course it is for, as loaded by one join query.
+ */
+public class ReviewDetails extends Review {
+    private final String courseMnemonic;
+    private final String courseNumber;
+    private final String courseTitle;
+
+    public ReviewDetails(int id, int courseId, int userId, int rating, String comment, Timestamp timestamp,
+                         String courseMnemonic, String courseNumber, String courseTitle) {
+        super(id, courseId, userId, rating, comment, timestamp);
+        this.courseMnemonic = courseMnemonic;
+        this.courseNumber = courseNumber;
+        this.courseTitle = courseTitle;
+    }
+
+    public String getCourseMnemonic() {
+        return courseMnemonic;
+    }
+
+    public String getCourseNumber() {
+        return courseNumber;
+    }
+
+    public String getCourseTitle() {
+        return courseTitle;
+    }
+
+    /**
+     * @return e.g. "CS 3140: Software Development Essentials"
+     */
+    public String getCourseName() {
+        return courseMnemonic + " " + courseNumber + ": " + courseTitle;
+    }
+
+    public Course getCourse() {
+        return new Course(getCourseId(), courseMnemonic, courseNumber, courseTitle);
+    }
+}
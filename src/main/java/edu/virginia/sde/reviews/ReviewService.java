@@ -1,89 +1,340 @@
 package edu.virginia.sde.reviews;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 public class ReviewService {
+    // How often a failed rating refresh is tried again, and the delay before the first retry, doubled for each after
+    private static final int REFRESH_ATTEMPTS = 4;
+    private static final long REFRESH_RETRY_DELAY_MILLIS = 250;
+
     private final ReviewDatabase reviewDatabase;
+    private final Executor executor;
+    // Batches review writes into shared transactions when set; otherwise each write commits on its own
+    private final ReviewWriteQueue writeQueue;
+    // Versions rating refreshes: each takes a ticket after its write commits and before it reads, so a later ticket
+    // always reads data at least as new
+    private final AtomicLong refreshTickets = new AtomicLong();
+    // Serializes full loads of the rating index; writers never take it
+    private final ReentrantLock ratingIndexLoadLock = new ReentrantLock();
+    // Loaded on first use
+    private volatile RatingHistogramIndex ratingIndex;
+    // The index a load is filling; refreshes update it too, so that it cannot miss writes committed while it loads
+    private volatile RatingHistogramIndex loadingIndex;
+    // Courses whose ratings in the index are stale because every retry of their refresh failed; the next refresh that
+    // succeeds retries them, and a full load clears them
+    private final Set<Integer> staleCourses = ConcurrentHashMap.newKeySet();
 
     public ReviewService(ReviewDatabase reviewDatabase) {
+        this(reviewDatabase, DatabaseExecutor.shared());
+    }
+
+    /**
+     * @param executor runs the database work of the {@code ...Async} methods
+     */
+    public ReviewService(ReviewDatabase reviewDatabase, Executor executor) {
+        this(reviewDatabase, executor, null);
+    }
+
+    /**
+     * @param writeQueue group-commits the reviews this service creates, updates and deletes, for servers with many
+     *                   concurrent writers
+     */
+    public ReviewService(ReviewDatabase reviewDatabase, ReviewWriteQueue writeQueue) {
+        this(reviewDatabase, DatabaseExecutor.shared(), writeQueue);
+    }
+
+    public ReviewService(ReviewDatabase reviewDatabase, Executor executor, ReviewWriteQueue writeQueue) {
         this.reviewDatabase = reviewDatabase;
+        this.executor = executor;
+        this.writeQueue = writeQueue;
     }
 
     public boolean checkReviewExists(int userId, int courseId) {
         try {
-            List<Review> userReviews = reviewDatabase.getReviewsByUserId(userId);
-
-            return userReviews.stream()
-                    .anyMatch(review -> review.getCourseId() == courseId);
+            return reviewDatabase.reviewExists(userId, courseId);
         } catch (SQLException e) {
             return false;
         }
     }
 
-    public Optional<String> createReview(Review review) {
+    public WriteResult createReview(Review review) {
         if (review.getRating() < 1 || review.getRating() > 5) {
-            return Optional.of("Rating must be an integer between 1 and 5.");
+            return WriteResult.invalid("Rating must be an integer between 1 and 5.");
         }
 
         try {
-            if (checkReviewExists(review.getUserId(), review.getCourseId())) {
-                return Optional.of("You have already reviewed this course.");
+            boolean inserted = writeQueue == null
+                    ? reviewDatabase.addReview(review)
+                    : awaitWrite(writeQueue.addReview(review));
+            if (!inserted) {
+                return WriteResult.conflict("You have already reviewed this course.");
             }
-            reviewDatabase.addReview(review);
-            return Optional.empty();
+            refreshRatingIndex(review.getCourseId());
+            return WriteResult.ok();
         } catch (SQLException e) {
-            return Optional.of("Error adding review. Please try again later.");
+            return WriteResult.storageError("Error adding review. Please try again later.", e);
         }
     }
 
-    public Optional<String> updateReview(Review review) {
+    public WriteResult updateReview(Review review) {
         if (review.getRating() < 1 || review.getRating() > 5) {
-            return Optional.of("Rating must be an integer between 1 and 5.");
+            return WriteResult.invalid("Rating must be an integer between 1 and 5.");
         }
 
         try {
-            Optional<Review> existingReview = reviewDatabase.getReviewById(review.getId());
-            if (existingReview.isEmpty()) {
-                return Optional.of("No existing review found to update.");
+            OptionalInt courseId = writeQueue == null
+                    ? reviewDatabase.updateReview(review)
+                    : awaitWrite(writeQueue.updateReview(review));
+            if (courseId.isEmpty()) {
+                return WriteResult.notFound("No existing review found to update.");
             }
-            reviewDatabase.updateReview(review);
-            return Optional.empty();
+            refreshRatingIndex(courseId.getAsInt());
+            return WriteResult.ok();
         } catch (SQLException e) {
-            return Optional.of("Error updating review. Please try again later.");
+            return WriteResult.storageError("Error updating review. Please try again later.", e);
         }
     }
 
-    public Optional<String> deleteReview(int reviewId) {
+    public WriteResult deleteReview(int reviewId) {
         try {
-            Optional<Review> existingReview = reviewDatabase.getReviewById(reviewId);
-            if (existingReview.isEmpty()) {
-                return Optional.of("No existing review found to delete.");
+            OptionalInt courseId = writeQueue == null
+                    ? reviewDatabase.deleteReview(reviewId)
+                    : awaitWrite(writeQueue.deleteReview(reviewId));
+            if (courseId.isEmpty()) {
+                return WriteResult.notFound("No existing review found to delete.");
             }
-            reviewDatabase.deleteReview(reviewId);
-            return Optional.empty();
+            refreshRatingIndex(courseId.getAsInt());
+            return WriteResult.ok();
         } catch (SQLException e) {
-            return Optional.of("Error deleting review. Please try again later.");
+            return WriteResult.storageError("Error deleting review. Please try again later.", e);
+        }
+    }
+
+    /**
+     * Waits for a queued write to commit, surfacing its failure as the SQLException the direct call would throw.
+     */
+    private static <T> T awaitWrite(CompletableFuture<T> write) throws SQLException {
+        try {
+            return write.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Queued review write failed", e.getCause());
         }
     }
 
+    /**
+     * @return the mean rating, or 0.0 if the course has no reviews; see {@link #getMeanRating(int)}
+     */
     public double getAverageRatingForCourse(int courseId) {
+        return getMeanRating(courseId).orElse(0.0);
+    }
+
+    /**
+     * @return the course's mean rating from the in-memory rating index, or empty if it has no reviews
+     */
+    public OptionalDouble getMeanRating(int courseId) {
+        return getRatingIndex().getMean(courseId);
+    }
+
+    /**
+     * @return the course's median rating from the in-memory rating index, or empty if it has no reviews
+     */
+    public OptionalDouble getMedianRating(int courseId) {
+        return getRatingIndex().getMedian(courseId);
+    }
+
+    /**
+     * @return how many reviews gave the course each rating, from 1 star (element 0) to 5 stars (element 4)
+     */
+    public int[] getRatingDistribution(int courseId) {
+        return getRatingIndex().getDistribution(courseId);
+    }
+
+    public int getReviewCount(int courseId) {
+        return getRatingIndex().getReviewCount(courseId);
+    }
+
+    /**
+     * @return the course's rating smoothed towards the catalog-wide mean, which ranks courses with few reviews fairly;
+     * see {@link RatingHistogramIndex}
+     */
+    public double getBayesianRating(int courseId) {
+        return getRatingIndex().getBayesianScore(courseId);
+    }
+
+    /**
+     * @return the courses sorted best first by Bayesian rating, then by review count, without touching the database
+     * once the rating index is loaded
+     */
+    public List<Course> sortByRating(List<Course> courses) {
+        Map<Integer, Course> coursesById = new HashMap<>();
+        int[] courseIds = new int[courses.size()];
+        for (int i = 0; i < courseIds.length; i++) {
+            Course course = courses.get(i);
+            courseIds[i] = course.getId();
+            coursesById.put(course.getId(), course);
+        }
+        List<Course> sorted = new ArrayList<>(courseIds.length);
+        for (int courseId : getRatingIndex().rank(courseIds, RatingHistogramIndex.Ranking.SCORE)) {
+            sorted.add(coursesById.get(courseId));
+        }
+        return sorted;
+    }
+
+    /**
+     * The in-memory rating histograms of every course, loaded from the CourseStats table on first use and refreshed
+     * after every review written through this service. Writes made by other processes (or other ReviewService
+     * instances) are not seen until {@link #reloadRatingIndex()}.
+     */
+    public RatingHistogramIndex getRatingIndex() {
+        RatingHistogramIndex index = ratingIndex;
+        if (index != null) {
+            return index;
+        }
+        ratingIndexLoadLock.lock();
+        try {
+            index = ratingIndex;
+            return index != null ? index : loadRatingIndex();
+        } finally {
+            ratingIndexLoadLock.unlock();
+        }
+    }
+
+    /**
+     * @return the rating index if it has loaded, without ever loading it; for callers such as table cells on the JavaFX
+     * thread, which must not wait on the database
+     */
+    public Optional<RatingHistogramIndex> getLoadedRatingIndex() {
+        return Optional.ofNullable(ratingIndex);
+    }
+
+    /**
+     * Rebuilds the rating index from the database. The current index keeps serving reads until the new one is loaded.
+     */
+    public void reloadRatingIndex() {
+        ratingIndexLoadLock.lock();
+        try {
+            loadRatingIndex();
+        } finally {
+            ratingIndexLoadLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the rating index with the histograms of a snapshot, so that ratings and rankings need no database work
+     * on a cold start. Later writes through this service refresh it as usual. Only called by
+     * {@link CourseService#loadSnapshot(CatalogSnapshot)}, once it has checked that the snapshot is current.
+     */
+    void loadSnapshot(CatalogSnapshot snapshot) {
+        ratingIndex = snapshot.toRatingIndex();
+    }
+
+    /**
+     * Streams the CourseStats table into a new index and publishes it. Called with ratingIndexLoadLock held.
+     */
+    private RatingHistogramIndex loadRatingIndex() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        loadingIndex = index;
+        // The load reads every course after these writes committed
+        staleCourses.clear();
         try {
-            List<Review> reviews = reviewDatabase.getReviewsByCourseId(courseId);
+            // Refreshes with an earlier ticket committed before this read starts; later ones also update this index
+            long version = refreshTickets.incrementAndGet();
+            try (Stream<CourseStats> allStats = reviewDatabase.streamAllCourseStats()) {
+                allStats.forEach(stats -> index.putIfNewer(stats, version));
+            } catch (SQLException e) {
+                throw new RuntimeException("Error loading rating statistics for courses.", e);
+            }
+            ratingIndex = index;
+            return index;
+        } finally {
+            loadingIndex = null;
+        }
+    }
 
-            if (reviews.isEmpty()) {
-                return 0.0;
+    /**
+     * Re-reads one course's aggregates into the rating index after a committed write. The read holds no lock, so
+     * concurrent writers do not queue behind each other's reads; versioning by ticket keeps a refresh that finishes
+     * late from overwriting a newer one.
+     */
+    private void refreshRatingIndex(int courseId) {
+        refreshRatingIndex(courseId, 1);
+    }
+
+    /**
+     * A read that fails is retried in the background with a growing delay, never by reloading the whole index on the
+     * caller's thread, which may be the JavaFX thread. Each retry takes a new ticket, so it also reaches a load that
+     * started in the meantime.
+     */
+    private void refreshRatingIndex(int courseId, int attempt) {
+        long version = refreshTickets.incrementAndGet();
+        // Read after taking the ticket, and in the opposite order to loadRatingIndex's writes, so a load in progress
+        // is never missed
+        RatingHistogramIndex loading = loadingIndex;
+        RatingHistogramIndex index = ratingIndex;
+        if (loading == null && index == null) {
+            return; // the first load will read the write
+        }
+        CourseStats stats;
+        try {
+            stats = reviewDatabase.getCourseStats(courseId);
+        } catch (SQLException e) {
+            // The write itself succeeded; keep serving the other courses and try this one again later
+            if (attempt < REFRESH_ATTEMPTS) {
+                long delay = REFRESH_RETRY_DELAY_MILLIS << (attempt - 1);
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor)
+                        .execute(() -> refreshRatingIndex(courseId, attempt + 1));
+            } else {
+                staleCourses.add(courseId);
+                System.err.println("Ratings of course " + courseId + " are stale: " + e.getMessage());
+            }
+            return;
+        }
+        if (loading != null) {
+            loading.putIfNewer(stats, version);
+        }
+        if (index != null) {
+            index.putIfNewer(stats, version);
+        }
+        staleCourses.remove(courseId);
+        for (Integer staleCourseId : staleCourses) {
+            if (staleCourses.remove(staleCourseId)) {
+                executor.execute(() -> refreshRatingIndex(staleCourseId, 1));
             }
+        }
+    }
 
-            // Calculate the sum of ratings
-            int totalRating = reviews.stream()
-                    .mapToInt(Review::getRating)
-                    .sum();
+    public CourseStats getCourseStats(int courseId) {
+        try {
+            return reviewDatabase.getCourseStats(courseId);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading rating statistics for course.", e);
+        }
+    }
 
-            // Calculate the average
-            return (double) totalRating / reviews.size();
+    public Map<Integer, CourseStats> getCourseStats(Collection<Integer> courseIds) {
+        try {
+            return reviewDatabase.getCourseStats(courseIds);
         } catch (SQLException e) {
-            throw new RuntimeException("Error calculating average rating for course.", e);
+            throw new RuntimeException("Error loading rating statistics for courses.", e);
         }
     }
 
@@ -102,4 +353,138 @@ public class ReviewService {
             return List.of();
         }
     }
+
+    /**
+     * Every review of a course, newest first, read lazily. Close the stream (try-with-resources) when done.
+     */
+    public Stream<Review> streamReviewsForCourse(int courseId) {
+        try {
+            return reviewDatabase.streamReviewsByCourseId(courseId);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading reviews for course.", e);
+        }
+    }
+
+    /**
+     * Every review by a user, newest first, read lazily. Close the stream (try-with-resources) when done.
+     */
+    public Stream<Review> streamReviewsByUser(int userId) {
+        try {
+            return reviewDatabase.streamReviewsByUserId(userId);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading reviews for user.", e);
+        }
+    }
+
+    /**
+     * Newest-first page of a course's reviews.
+     *
+     * @param after the last review of the previous page, or null for the first page
+     */
+    public List<Review> getReviewsForCoursePage(int courseId, Review after, int pageSize) {
+        try {
+            return reviewDatabase.getReviewsByCourseIdPage(courseId, after, pageSize);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading reviews for course.", e);
+        }
+    }
+
+    /**
+     * Newest-first page of a user's reviews.
+     *
+     * @param after the last review of the previous page, or null for the first page
+     */
+    public List<Review> getReviewsByUserPage(int userId, Review after, int pageSize) {
+        try {
+            return reviewDatabase.getReviewsByUserIdPage(userId, after, pageSize);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading reviews for user.", e);
+        }
+    }
+
+    /**
+     * Newest-first page of a user's reviews with the details of each reviewed course, loaded in one query.
+     *
+     * @param after the last review of the previous page, or null for the first page
+     */
+    public List<ReviewDetails> getReviewDetailsByUserPage(int userId, Review after, int pageSize) {
+        try {
+            return reviewDatabase.getReviewDetailsByUserIdPage(userId, after, pageSize);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading reviews for user.", e);
+        }
+    }
+
+    public Optional<Review> getReviewById(int reviewId) {
+        try {
+            return reviewDatabase.getReviewById(reviewId);
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error occurred", e);
+        }
+    }
+
+    public Optional<Review> getUserReviewForCourse(int userId, int courseId) {
+        try {
+            return reviewDatabase.getReviewByUserAndCourse(userId, courseId);
+        } catch (SQLException e) {
+            return Optional.empty();
+        }
+    }
+
+    public CompletableFuture<WriteResult> createReviewAsync(Review review) {
+        return CompletableFuture.supplyAsync(() -> createReview(review), executor);
+    }
+
+    public CompletableFuture<WriteResult> updateReviewAsync(Review review) {
+        return CompletableFuture.supplyAsync(() -> updateReview(review), executor);
+    }
+
+    public CompletableFuture<WriteResult> deleteReviewAsync(int reviewId) {
+        return CompletableFuture.supplyAsync(() -> deleteReview(reviewId), executor);
+    }
+
+    public CompletableFuture<RatingHistogramIndex> getRatingIndexAsync() {
+        RatingHistogramIndex index = ratingIndex;
+        if (index != null) {
+            return CompletableFuture.completedFuture(index);
+        }
+        return CompletableFuture.supplyAsync(this::getRatingIndex, executor);
+    }
+
+    public CompletableFuture<List<Course>> sortByRatingAsync(List<Course> courses) {
+        return CompletableFuture.supplyAsync(() -> sortByRating(courses), executor);
+    }
+
+    public CompletableFuture<CourseStats> getCourseStatsAsync(int courseId) {
+        return CompletableFuture.supplyAsync(() -> getCourseStats(courseId), executor);
+    }
+
+    public CompletableFuture<Map<Integer, CourseStats>> getCourseStatsAsync(Collection<Integer> courseIds) {
+        return CompletableFuture.supplyAsync(() -> getCourseStats(courseIds), executor);
+    }
+
+    public CompletableFuture<List<Review>> getReviewsForCourseAsync(int courseId) {
+        return CompletableFuture.supplyAsync(() -> getReviewsForCourse(courseId), executor);
+    }
+
+    public CompletableFuture<List<Review>> getReviewsByUserAsync(int userId) {
+        return CompletableFuture.supplyAsync(() -> getReviewsByUser(userId), executor);
+    }
+
+    public CompletableFuture<List<Review>> getReviewsForCoursePageAsync(int courseId, Review after, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getReviewsForCoursePage(courseId, after, pageSize), executor);
+    }
+
+    public CompletableFuture<List<Review>> getReviewsByUserPageAsync(int userId, Review after, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getReviewsByUserPage(userId, after, pageSize), executor);
+    }
+
+    public CompletableFuture<List<ReviewDetails>> getReviewDetailsByUserPageAsync(int userId, Review after,
+                                                                                  int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getReviewDetailsByUserPage(userId, after, pageSize), executor);
+    }
+
+    public CompletableFuture<Optional<Review>> getUserReviewForCourseAsync(int userId, int courseId) {
+        return CompletableFuture.supplyAsync(() -> getUserReviewForCourse(userId, courseId), executor);
+    }
 }
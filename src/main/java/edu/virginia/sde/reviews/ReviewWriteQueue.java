@@ -0,0 +1,277 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Group commit for review writes: callers submit mutations and get a future back, and a single writer thread runs
+ * whatever has queued up as one transaction, so hundreds of concurrent writers share each commit (and its fsync)
+ * instead of queueing for one each.
+ * <p>
+ * Each mutation runs inside its own savepoint, so one that fails (a constraint violation, say) is rolled back and
+ * fails only its own future; the rest of the batch still commits. Futures complete once the batch has committed, on
+ * the writer thread, so chain anything slow with the {@code ...Async} methods of CompletableFuture. Should the writer
+ * thread ever die, every mutation still waiting on it fails, as does every mutation submitted after.
+ * <p>
+ * Batches form on their own while the previous batch commits. A linger time additionally holds each batch open a
+ * little longer to catch more writes, trading that much latency for fewer commits.
+ */
+public final class ReviewWriteQueue implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final Duration DEFAULT_LINGER = Duration.ZERO;
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * @param <R> what the work returns inside the transaction
+     * @param <T> what the caller's future completes with once the transaction has committed
+     */
+    private static class Mutation<R, T> {
+        private final Work<R> work;
+        // Turns the work's result into the caller's, and applies anything that must wait for the commit
+        private final Function<R, T> onCommit;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private R result;
+        private Exception error;
+
+        Mutation(Work<R> work, Function<R, T> onCommit) {
+            this.work = work;
+            this.onCommit = onCommit;
+        }
+
+        void run() throws SQLException {
+            result = work.run();
+        }
+
+        /**
+         * Called once the batch has committed.
+         */
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+                return;
+            }
+            try {
+                future.complete(onCommit.apply(result));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Queued by close() after the last real mutation to stop the writer thread
+    private static final Mutation<Void, Void> STOP = new Mutation<>(() -> null, Function.identity());
+
+    private final DatabaseConnection databaseConnection;
+    private final ReviewDatabase reviewDatabase;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<Mutation<?, ?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder mutations = new LongAdder();
+    // Guarded by this, so that nothing can be queued behind STOP, or after the writer thread has died
+    private boolean closed = false;
+
+    public ReviewWriteQueue(DatabaseConnection databaseConnection, ReviewDatabase reviewDatabase) {
+        this(databaseConnection, reviewDatabase, DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER);
+    }
+
+    /**
+     * @param maxBatchSize the most mutations committed together
+     * @param linger       how long to keep a batch open for more mutations once its first one arrives
+     */
+    public ReviewWriteQueue(DatabaseConnection databaseConnection, ReviewDatabase reviewDatabase, int maxBatchSize,
+                            Duration linger) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (linger.isNegative()) {
+            throw new IllegalArgumentException("Linger time cannot be negative");
+        }
+        this.databaseConnection = databaseConnection;
+        this.reviewDatabase = reviewDatabase;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = linger.toNanos();
+        this.writer = DatabaseExecutor.daemonThreadFactory("review-writer").newThread(this::writeBatches);
+        writer.start();
+    }
+
+    /**
+     * @return a future of whether the review was inserted (false if the user already reviewed the course); the
+     * review's id is set once the insert has committed, before the future completes
+     * @see ReviewDatabase#addReview(Review)
+     */
+    public CompletableFuture<Boolean> addReview(Review review) {
+        return submit(() -> reviewDatabase.insertReview(review), reviewId -> {
+            reviewId.ifPresent(review::setId);
+            return reviewId.isPresent();
+        });
+    }
+
+    /**
+     * @return a future of the updated review's CourseID, or empty if there was no such review
+     * @see ReviewDatabase#updateReview(Review)
+     */
+    public CompletableFuture<OptionalInt> updateReview(Review review) {
+        return submit(() -> reviewDatabase.updateReview(review), Function.identity());
+    }
+
+    /**
+     * @return a future of the deleted review's CourseID, or empty if there was no such review
+     * @see ReviewDatabase#deleteReview(int)
+     */
+    public CompletableFuture<OptionalInt> deleteReview(int reviewId) {
+        return submit(() -> reviewDatabase.deleteReview(reviewId), Function.identity());
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getMutationCount() {
+        return mutations.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long batchCount = batches.sum();
+        return batchCount == 0 ? 0.0 : (double) mutations.sum() / batchCount;
+    }
+
+    /**
+     * Stops accepting mutations, commits the ones already queued and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(STOP);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            // The writer still finishes the queued mutations in the background
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <R, T> CompletableFuture<T> submit(Work<R> work, Function<R, T> onCommit) {
+        Mutation<R, T> mutation = new Mutation<>(work, onCommit);
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("The review write queue is closed"));
+            }
+            queue.add(mutation);
+        }
+        return mutation.future;
+    }
+
+    private void writeBatches() {
+        List<Mutation<?, ?>> batch = new ArrayList<>(maxBatchSize);
+        try {
+            writeBatches(batch);
+        } finally {
+            // Nothing is left after a clean stop; but if the writer is dying of an Error, no caller may be left waiting
+            // on it forever
+            failOutstanding(batch);
+        }
+    }
+
+    private void writeBatches(List<Mutation<?, ?>> batch) {
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                Mutation<?, ?> first = queue.take();
+                if (first == STOP) {
+                    break;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Mutation<?, ?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Only close() stops the writer, so that every queued mutation still gets its answer
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Closes the queue to new mutations and fails every one that has not been answered yet: those in the batch being
+     * written and those still queued. Futures that are already complete are left as they are.
+     */
+    private void failOutstanding(List<Mutation<?, ?>> batch) {
+        synchronized (this) {
+            closed = true;
+        }
+        IllegalStateException stopped = new IllegalStateException("The review writer thread stopped");
+        for (Mutation<?, ?> mutation : batch) {
+            mutation.future.completeExceptionally(stopped);
+        }
+        Mutation<?, ?> queued;
+        while ((queued = queue.poll()) != null) {
+            queued.future.completeExceptionally(stopped);
+        }
+    }
+
+    private void commit(List<Mutation<?, ?>> batch) {
+        try {
+            databaseConnection.write("ReviewWriteQueue.commitBatch", statements -> {
+                Connection connection = statements.getConnection();
+                for (Mutation<?, ?> mutation : batch) {
+                    // The ReviewDatabase call joins this transaction; the savepoint confines a failure to the mutation
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        mutation.run();
+                        connection.releaseSavepoint(savepoint);
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback(savepoint);
+                        connection.releaseSavepoint(savepoint);
+                        mutation.error = e;
+                    }
+                }
+                return batch.size();
+            });
+        } catch (SQLException | RuntimeException e) {
+            for (Mutation<?, ?> mutation : batch) {
+                mutation.future.completeExceptionally(e);
+            }
+            return;
+        }
+        batches.increment();
+        mutations.add(batch.size());
+        for (Mutation<?, ?> mutation : batch) {
+            mutation.complete();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a ResultSet into an object, for {@link DatabaseConnection#stream(String, SqlWork, RowMapper)}.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,379 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date. The schema version is kept in SQLite's {@code PRAGMA user_version} header
+ * field, and every {@link Migration} newer than it is applied in order on startup, each in its own transaction
+ * together with the version bump, so an interrupted upgrade resumes from the last migration that committed.
+ * <p>
+ * Databases created before versioning existed report version 0 but already have some of the tables, so every
+ * migration up to {@value #UNVERSIONED_BASELINE} must be safe to re-run against them. To change the schema, append a
+ * new migration to {@link #MIGRATIONS}; never edit one that has shipped.
+ */
+public class SchemaMigrator {
+    /**
+     * One schema change, applied on the writer connection inside a transaction.
+     */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    public static class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String toString() {
+            return "V" + version + ": " + description;
+        }
+    }
+
+    // The last migration that existed (as unversioned createTables code) before user_version was tracked
+    private static final int UNVERSIONED_BASELINE = 4;
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create Users, Courses and Reviews", connection -> {
+                createUsersTable(connection);
+                createCoursesTable(connection);
+                createReviewsTable(connection);
+            }),
+            new Migration(2, "Store review timestamps as epoch milliseconds", SchemaMigrator::normalizeReviewTimestamps),
+            new Migration(3, "Maintain per-course rating aggregates", SchemaMigrator::createCourseStatsTable),
+            new Migration(4, "Full-text course search index", SchemaMigrator::createCourseSearchIndex),
+            new Migration(5, "Indexes for review listings and course lookups", SchemaMigrator::createQueryIndexes),
+            new Migration(6, "Count catalog changes for snapshot freshness", SchemaMigrator::createCatalogChanges)
+    );
+
+    private final Connection connection;
+
+    /**
+     * @param connection a connection with auto-commit disabled
+     */
+    public SchemaMigrator(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+    }
+
+    public int getCurrentVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet resultSet = stmt.executeQuery("PRAGMA user_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Applies every migration newer than the database's version.
+     *
+     * @return the migrations that were applied, in order (empty if the schema was already current)
+     * @throws IllegalStateException if the database was written by a newer version of the application
+     */
+    public List<Migration> migrate() throws SQLException {
+        int currentVersion = getCurrentVersion();
+        if (currentVersion > getLatestVersion()) {
+            throw new IllegalStateException("Database schema version " + currentVersion
+                    + " is newer than this application supports (" + getLatestVersion() + ")");
+        }
+        List<Migration> applied = new ArrayList<>();
+        for (Migration migration : MIGRATIONS) {
+            if (migration.getVersion() <= currentVersion) {
+                continue;
+            }
+            try {
+                migration.step.apply(connection);
+                try (Statement stmt = connection.createStatement()) {
+                    // PRAGMA does not accept bound parameters; the version is an int constant
+                    stmt.executeUpdate("PRAGMA user_version = " + migration.getVersion());
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw new SQLException("Schema migration " + migration + " failed", e);
+            }
+            applied.add(migration);
+        }
+        return applied;
+    }
+
+    private static void createUsersTable(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("""
+            CREATE TABLE IF NOT EXISTS Users (
+                UserID INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                Username TEXT NOT NULL UNIQUE,
+                Password TEXT NOT NULL
+            )
+            """)) {
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void createCoursesTable(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("""
+            CREATE TABLE IF NOT EXISTS Courses (
+                CourseID INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                SubjectMnemonic TEXT NOT NULL,
+                CourseNumber TEXT NOT NULL,
+                Title TEXT NOT NULL,
+                CONSTRAINT UniqueCourse UNIQUE (SubjectMnemonic, CourseNumber, Title)
+            )
+            """)) {
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void createReviewsTable(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("""
+                CREATE TABLE IF NOT EXISTS Reviews (
+                    ReviewID INTEGER PRIMARY KEY AUTOINCREMENT,
+                    UserID INTEGER NOT NULL,
+                    CourseID INTEGER NOT NULL,
+                    Rating INTEGER NOT NULL,
+                    Comment TEXT,
+                    Timestamp TIMESTAMP NOT NULL,
+                    FOREIGN KEY (UserID) REFERENCES Users(UserID) ON DELETE CASCADE,
+                    FOREIGN KEY (CourseID) REFERENCES Courses(CourseID) ON DELETE CASCADE,
+                    CONSTRAINT UniqueReview UNIQUE (UserID, CourseID)
+                )
+                """)) {
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Older rows store Timestamp as 'yyyy-MM-dd HH:mm:ss' text (local time) while the JDBC driver writes epoch
+     * milliseconds. SQLite orders all integers before all text, so convert the text rows to milliseconds to keep
+     * ORDER BY Timestamp (and the keyset pagination built on it) chronological.
+     */
+    private static void normalizeReviewTimestamps(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                    UPDATE Reviews
+                    SET Timestamp = CAST(strftime('%s', Timestamp, 'utc') AS INTEGER) * 1000
+                    WHERE typeof(Timestamp) = 'text' AND strftime('%s', Timestamp, 'utc') IS NOT NULL
+                    """);
+        }
+    }
+
+    /**
+     * Creates the CourseStats table, which holds a running review count, rating sum and 1-5 rating histogram per
+     * course. Triggers on Reviews keep it up to date inside the same transaction as the write that changed the review,
+     * so the aggregates can never drift from the Reviews table (this also covers cascaded deletes).
+     */
+    private static void createCourseStatsTable(Connection connection) throws SQLException {
+        boolean alreadyExists = tableExists(connection, "CourseStats");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS CourseStats (
+                        CourseID INTEGER PRIMARY KEY NOT NULL,
+                        ReviewCount INTEGER NOT NULL DEFAULT 0,
+                        RatingSum INTEGER NOT NULL DEFAULT 0,
+                        Rating1 INTEGER NOT NULL DEFAULT 0,
+                        Rating2 INTEGER NOT NULL DEFAULT 0,
+                        Rating3 INTEGER NOT NULL DEFAULT 0,
+                        Rating4 INTEGER NOT NULL DEFAULT 0,
+                        Rating5 INTEGER NOT NULL DEFAULT 0,
+                        FOREIGN KEY (CourseID) REFERENCES Courses(CourseID) ON DELETE CASCADE
+                    )
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TRIGGER IF NOT EXISTS ReviewInsertedStats AFTER INSERT ON Reviews
+                    BEGIN
+                        INSERT OR IGNORE INTO CourseStats (CourseID) VALUES (NEW.CourseID);
+                        UPDATE CourseStats
+                        SET ReviewCount = ReviewCount + 1,
+                            RatingSum = RatingSum + NEW.Rating,
+                            Rating1 = Rating1 + (NEW.Rating = 1),
+                            Rating2 = Rating2 + (NEW.Rating = 2),
+                            Rating3 = Rating3 + (NEW.Rating = 3),
+                            Rating4 = Rating4 + (NEW.Rating = 4),
+                            Rating5 = Rating5 + (NEW.Rating = 5)
+                        WHERE CourseID = NEW.CourseID;
+                    END
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TRIGGER IF NOT EXISTS ReviewDeletedStats AFTER DELETE ON Reviews
+                    BEGIN
+                        UPDATE CourseStats
+                        SET ReviewCount = ReviewCount - 1,
+                            RatingSum = RatingSum - OLD.Rating,
+                            Rating1 = Rating1 - (OLD.Rating = 1),
+                            Rating2 = Rating2 - (OLD.Rating = 2),
+                            Rating3 = Rating3 - (OLD.Rating = 3),
+                            Rating4 = Rating4 - (OLD.Rating = 4),
+                            Rating5 = Rating5 - (OLD.Rating = 5)
+                        WHERE CourseID = OLD.CourseID;
+                    END
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TRIGGER IF NOT EXISTS ReviewUpdatedStats AFTER UPDATE OF Rating, CourseID ON Reviews
+                    BEGIN
+                        UPDATE CourseStats
+                        SET ReviewCount = ReviewCount - 1,
+                            RatingSum = RatingSum - OLD.Rating,
+                            Rating1 = Rating1 - (OLD.Rating = 1),
+                            Rating2 = Rating2 - (OLD.Rating = 2),
+                            Rating3 = Rating3 - (OLD.Rating = 3),
+                            Rating4 = Rating4 - (OLD.Rating = 4),
+                            Rating5 = Rating5 - (OLD.Rating = 5)
+                        WHERE CourseID = OLD.CourseID;
+                        INSERT OR IGNORE INTO CourseStats (CourseID) VALUES (NEW.CourseID);
+                        UPDATE CourseStats
+                        SET ReviewCount = ReviewCount + 1,
+                            RatingSum = RatingSum + NEW.Rating,
+                            Rating1 = Rating1 + (NEW.Rating = 1),
+                            Rating2 = Rating2 + (NEW.Rating = 2),
+                            Rating3 = Rating3 + (NEW.Rating = 3),
+                            Rating4 = Rating4 + (NEW.Rating = 4),
+                            Rating5 = Rating5 + (NEW.Rating = 5)
+                        WHERE CourseID = NEW.CourseID;
+                    END
+                    """);
+            if (!alreadyExists) {
+                // Databases created before CourseStats existed already have reviews, so seed the aggregates once
+                stmt.executeUpdate("""
+                        INSERT INTO CourseStats (CourseID, ReviewCount, RatingSum, Rating1, Rating2, Rating3, Rating4, Rating5)
+                        SELECT CourseID, COUNT(*), SUM(Rating),
+                               SUM(Rating = 1), SUM(Rating = 2), SUM(Rating = 3), SUM(Rating = 4), SUM(Rating = 5)
+                        FROM Reviews
+                        GROUP BY CourseID
+                        """);
+            }
+        }
+    }
+
+    /**
+     * Creates the CourseSearchIndex FTS5 table used by course search. Each row is keyed by CourseID and indexes the
+     * mnemonic, number, title and the combined code (e.g. "CS2150"). Triggers on Courses keep it in sync.
+     */
+    private static void createCourseSearchIndex(Connection connection) throws SQLException {
+        boolean alreadyExists = tableExists(connection, "CourseSearchIndex");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                    CREATE VIRTUAL TABLE IF NOT EXISTS CourseSearchIndex USING fts5(
+                        SubjectMnemonic, CourseNumber, Title, CourseCode,
+                        tokenize = 'unicode61', prefix = '2 3 4'
+                    )
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TRIGGER IF NOT EXISTS CourseInsertedSearch AFTER INSERT ON Courses
+                    BEGIN
+                        INSERT INTO CourseSearchIndex (rowid, SubjectMnemonic, CourseNumber, Title, CourseCode)
+                        VALUES (NEW.CourseID, NEW.SubjectMnemonic, NEW.CourseNumber, NEW.Title,
+                                NEW.SubjectMnemonic || NEW.CourseNumber);
+                    END
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TRIGGER IF NOT EXISTS CourseDeletedSearch AFTER DELETE ON Courses
+                    BEGIN
+                        DELETE FROM CourseSearchIndex WHERE rowid = OLD.CourseID;
+                    END
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TRIGGER IF NOT EXISTS CourseUpdatedSearch AFTER UPDATE ON Courses
+                    BEGIN
+                        DELETE FROM CourseSearchIndex WHERE rowid = OLD.CourseID;
+                        INSERT INTO CourseSearchIndex (rowid, SubjectMnemonic, CourseNumber, Title, CourseCode)
+                        VALUES (NEW.CourseID, NEW.SubjectMnemonic, NEW.CourseNumber, NEW.Title,
+                                NEW.SubjectMnemonic || NEW.CourseNumber);
+                    END
+                    """);
+            if (!alreadyExists) {
+                stmt.executeUpdate("""
+                        INSERT INTO CourseSearchIndex (rowid, SubjectMnemonic, CourseNumber, Title, CourseCode)
+                        SELECT CourseID, SubjectMnemonic, CourseNumber, Title, SubjectMnemonic || CourseNumber
+                        FROM Courses
+                        """);
+            }
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String tableName) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("""
+                SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?
+                """)) {
+            stmt.setString(1, tableName);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * Indexes the hot queries need:
+     * <ul>
+     *     <li>a course's and a user's reviews, newest first, are read straight from an index in keyset order instead
+     *     of being collected and sorted for every page</li>
+     *     <li>the case-insensitive duplicate-course check matches an expression index instead of scanning Courses</li>
+     * </ul>
+     * ANALYZE then gives the query planner statistics for the new indexes.
+     */
+    private static void createQueryIndexes(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                    CREATE INDEX IF NOT EXISTS ReviewsByCourseNewest ON Reviews (CourseID, Timestamp, ReviewID)
+                    """);
+            stmt.executeUpdate("""
+                    CREATE INDEX IF NOT EXISTS ReviewsByUserNewest ON Reviews (UserID, Timestamp, ReviewID)
+                    """);
+            stmt.executeUpdate("""
+                    CREATE INDEX IF NOT EXISTS CoursesByFoldedKey
+                    ON Courses (LOWER(SubjectMnemonic), CourseNumber, LOWER(Title))
+                    """);
+            stmt.executeUpdate("ANALYZE");
+        }
+    }
+
+    /**
+     * Creates the CatalogChanges table, whose single row counts every insert, update and delete of a course or review.
+     * Triggers bump it inside the same transaction as the write, so a catalog snapshot can tell it is out of date even
+     * when the change kept every count and total the same (two ratings swapped, say, or a comment edited).
+     */
+    private static void createCatalogChanges(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS CatalogChanges (
+                        ID INTEGER PRIMARY KEY CHECK (ID = 1),
+                        ChangeCount INTEGER NOT NULL
+                    )
+                    """);
+            stmt.executeUpdate("INSERT OR IGNORE INTO CatalogChanges (ID, ChangeCount) VALUES (1, 0)");
+            String[][] triggers = {
+                    {"CourseInsertedChange", "INSERT ON Courses"},
+                    {"CourseUpdatedChange", "UPDATE ON Courses"},
+                    {"CourseDeletedChange", "DELETE ON Courses"},
+                    {"ReviewInsertedChange", "INSERT ON Reviews"},
+                    {"ReviewUpdatedChange", "UPDATE ON Reviews"},
+                    {"ReviewDeletedChange", "DELETE ON Reviews"}
+            };
+            for (String[] trigger : triggers) {
+                stmt.executeUpdate("""
+                        CREATE TRIGGER IF NOT EXISTS %s AFTER %s
+                        BEGIN
+                            UPDATE CatalogChanges SET ChangeCount = ChangeCount + 1 WHERE ID = 1;
+                        END
+                        """.formatted(trigger[0], trigger[1]));
+            }
+        }
+    }
+}
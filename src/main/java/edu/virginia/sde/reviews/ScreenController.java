@@ -0,0 +1,26 @@
+package edu.virginia.sde.reviews;
+
+/**
+ * The controller of a screen that {@link Navigator} loads once and then shows again and again.
+ * <p>
+ * The navigator may parse the screen's FXML, and so run the controller's {@code initialize()}, off the JavaFX
+ * application thread. {@code initialize()} should therefore only configure the screen's own nodes; animations, table
+ * loaders and anything else that must live on the JavaFX thread belong in the first {@link #refresh()}.
+ */
+public interface ScreenController {
+    /**
+     * Called once on the JavaFX application thread, after the screen is loaded and before it is first refreshed.
+     */
+    void setServices(UserService userService, CourseService courseService, ReviewService reviewService);
+
+    /**
+     * Called once on the JavaFX application thread, like {@link #setServices}.
+     */
+    void setNavigator(Navigator navigator);
+
+    /**
+     * Called on the JavaFX application thread every time the screen is about to be shown, to clear what was left on
+     * it last time and load its data afresh.
+     */
+    void refresh();
+}
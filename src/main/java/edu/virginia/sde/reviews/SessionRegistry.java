@@ -0,0 +1,166 @@
+package edu.virginia.sde.reviews;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The logged-in sessions of every user of one service layer, keyed by opaque random tokens.
+ * <p>
+ * A session ends when it is invalidated, when it has not been used for the idle timeout, or when it reaches the
+ * absolute timeout, whichever comes first. Looking a session up is a single {@link ConcurrentHashMap} read plus (at
+ * most once a second per session) a volatile write, so it never blocks, however many sessions are open. Expired
+ * sessions are refused as soon as they expire, and removed from memory by a background sweep.
+ */
+public final class SessionRegistry implements AutoCloseable {
+    /**
+     * Pass as both timeouts for sessions that last until they are invalidated, as on the desktop.
+     */
+    public static final Duration NO_EXPIRY = Duration.ZERO;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    public static final Duration DEFAULT_ABSOLUTE_TIMEOUT = Duration.ofHours(12);
+
+    private static final int TOKEN_BYTES = 32;
+    // Writing lastAccess on every lookup would make every request write to shared memory; this is precise enough
+    private static final long TOUCH_GRANULARITY_MILLIS = 1000;
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(
+            DatabaseExecutor.daemonThreadFactory("session-sweeper"));
+
+    public static class Session {
+        private final String token;
+        private final User user;
+        private final long createdAtMillis;
+        private volatile long lastAccessMillis;
+
+        Session(String token, User user, long nowMillis) {
+            this.token = token;
+            this.user = user;
+            this.createdAtMillis = nowMillis;
+            this.lastAccessMillis = nowMillis;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public long getCreatedAtMillis() {
+            return createdAtMillis;
+        }
+
+        public long getLastAccessMillis() {
+            return lastAccessMillis;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleTimeoutMillis;
+    private final long absoluteTimeoutMillis;
+    private final ScheduledFuture<?> sweep;
+
+    public SessionRegistry() {
+        this(DEFAULT_IDLE_TIMEOUT, DEFAULT_ABSOLUTE_TIMEOUT);
+    }
+
+    /**
+     * @param idleTimeout     how long a session survives without being used, or {@link #NO_EXPIRY}
+     * @param absoluteTimeout how long a session survives after login however much it is used, or {@link #NO_EXPIRY}
+     */
+    public SessionRegistry(Duration idleTimeout, Duration absoluteTimeout) {
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.absoluteTimeoutMillis = absoluteTimeout.toMillis();
+        if (idleTimeoutMillis < 0 || absoluteTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Session timeouts cannot be negative");
+        }
+        boolean expires = idleTimeoutMillis > 0 || absoluteTimeoutMillis > 0;
+        this.sweep = expires
+                ? SWEEPER.scheduleWithFixedDelay(this::removeExpired,
+                        SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                : null;
+    }
+
+    /**
+     * Starts a new session for an authenticated user.
+     */
+    public Session create(User user) {
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        random.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        Session session = new Session(token, user, System.currentTimeMillis());
+        sessions.put(token, session);
+        return session;
+    }
+
+    /**
+     * @return the live session for the token, which also counts as using it; empty if it does not exist or expired
+     */
+    public Optional<Session> resolve(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        if (isExpired(session, now)) {
+            sessions.remove(token, session);
+            return Optional.empty();
+        }
+        if (now - session.lastAccessMillis >= TOUCH_GRANULARITY_MILLIS) {
+            session.lastAccessMillis = now;
+        }
+        return Optional.of(session);
+    }
+
+    /**
+     * Ends the session; does nothing if it already ended.
+     */
+    public void invalidate(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * @return the number of sessions held in memory, including expired ones the sweep has not removed yet
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Removes every expired session. Runs periodically in the background; call it directly to reclaim memory sooner.
+     */
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> isExpired(session, now));
+    }
+
+    /**
+     * Stops the background sweep and ends every session.
+     */
+    @Override
+    public void close() {
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+        sessions.clear();
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return (idleTimeoutMillis > 0 && now - session.lastAccessMillis >= idleTimeoutMillis)
+                || (absoluteTimeoutMillis > 0 && now - session.createdAtMillis >= absoluteTimeoutMillis);
+    }
+}
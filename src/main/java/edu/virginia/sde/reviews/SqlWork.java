@@ -0,0 +1,12 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.SQLException;
+
+/**
+ * A unit of database work run by {@link DatabaseConnection#read(SqlWork)} or {@link DatabaseConnection#write(SqlWork)}
+ * against the statement cache of the connection it was given.
+ */
+@FunctionalInterface
+public interface SqlWork<T> {
+    T run(StatementCache statements) throws SQLException;
+}
@@ -0,0 +1,112 @@
+package edu.virginia.sde.reviews;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long each phase of application startup took, when it started and on which thread, so that the critical path
+ * to the first frame stays visible as the catalog grows. Phases may be timed from several threads at once.
+ */
+public class StartupReport {
+
+    @FunctionalInterface
+    public interface Step<T> {
+        T run() throws Exception;
+    }
+
+    public static class Phase {
+        private final String name;
+        private final String thread;
+        private final long startNanos;
+        private final long durationNanos;
+
+        Phase(String name, String thread, long startNanos, long durationNanos) {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * @return when the phase started, relative to the start of the report
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * @return how long the phase took; 0 for a milestone
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+    }
+
+    private final long originNanos = System.nanoTime();
+    // Guarded by this
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * Records the time from JVM start to now (class loading and, for a JavaFX application, starting the toolkit) as a
+     * phase, so that the report covers the whole time to the first frame.
+     */
+    public void recordLaunch(String name) {
+        long sinceJvmStart = TimeUnit.MILLISECONDS.toNanos(
+                System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+        add(new Phase(name, Thread.currentThread().getName(), -sinceJvmStart, sinceJvmStart));
+    }
+
+    /**
+     * Runs a step and records how long it took, including when it fails.
+     */
+    public <T> T time(String name, Step<T> step) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return step.run();
+        } finally {
+            add(new Phase(name, Thread.currentThread().getName(), start - originNanos, System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Records that a point of startup (e.g. the first frame) has been reached.
+     */
+    public void mark(String name) {
+        add(new Phase(name, Thread.currentThread().getName(), System.nanoTime() - originNanos, 0));
+    }
+
+    /**
+     * @return the phases recorded so far, in the order they started
+     */
+    public synchronized List<Phase> getPhases() {
+        List<Phase> sorted = new ArrayList<>(phases);
+        sorted.sort(Comparator.comparingLong(Phase::getStartNanos));
+        return sorted;
+    }
+
+    private synchronized void add(Phase phase) {
+        phases.add(phase);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("%-24s %10s %10s  %s%n",
+                "startup phase", "at ms", "took ms", "thread"));
+        for (Phase phase : getPhases()) {
+            report.append(String.format("%-24s %10.1f %10s  %s%n", phase.name, phase.startNanos / 1e6,
+                    phase.durationNanos == 0 ? "" : String.format("%.1f", phase.durationNanos / 1e6), phase.thread));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of prepared statements for one connection, keyed by SQL text.
+ * <p>
+ * The cache owns every statement it hands out:
+ * <ul>
+ *     <li>callers must NOT close a cached statement, but must close any ResultSet they open from it</li>
+ *     <li>a statement is only valid until the next call to {@link #prepare(String)} for the same SQL, so callers
+ *     should not keep a reference to it after they finish executing it</li>
+ *     <li>statements are closed when they are evicted and when the cache itself is closed</li>
+ * </ul>
+ * Like the connection it wraps, a StatementCache is not thread-safe.
+ */
+public class StatementCache implements AutoCloseable {
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    public StatementCache(Connection connection, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Statement cache capacity must be positive");
+        }
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL with its parameters cleared, preparing it on first use.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            return statement;
+        }
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every cached statement. The underlying connection is left open.
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        Iterator<PreparedStatement> iterator = statements.values().iterator();
+        while (iterator.hasNext()) {
+            try {
+                iterator.next().close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+            iterator.remove();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is already out of the cache, so there is nothing left to clean up
+            System.err.println("Error while closing evicted statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A coherent set of SQLite PRAGMAs for the connections of a {@link DatabaseConnection}, trading durability and memory
+ * for speed. Every profile uses WAL, so readers never block the writer.
+ * <ul>
+ *     <li>{@link #DURABLE}: every commit is synced to disk before it returns, so not even a power cut loses one</li>
+ *     <li>{@link #BALANCED} (the default): syncs at checkpoints only, so a power cut (but never an application crash)
+ *     can lose the last few commits; larger caches and memory-mapped reads</li>
+ *     <li>{@link #READ_MOSTLY}: for kiosks and demo machines that browse far more than they write; as balanced, with
+ *     the whole database memory-mapped and the WAL checkpointed less often</li>
+ * </ul>
+ * The profile is chosen with the {@value #PROPERTY} system property or the {@value #ENVIRONMENT_VARIABLE}
+ * environment variable, e.g. {@code -Dreviews.storage.profile=durable}.
+ */
+public enum StorageProfile {
+    DURABLE(List.of(
+            "PRAGMA synchronous = FULL",
+            "PRAGMA cache_size = -16384",
+            "PRAGMA mmap_size = 0",
+            "PRAGMA temp_store = DEFAULT",
+            "PRAGMA wal_autocheckpoint = 1000"),
+            List.of(
+                    "PRAGMA cache_size = -8192",
+                    "PRAGMA mmap_size = 0")),
+    BALANCED(List.of(
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA cache_size = -65536",
+            "PRAGMA mmap_size = 268435456",
+            "PRAGMA temp_store = MEMORY",
+            "PRAGMA wal_autocheckpoint = 1000"),
+            List.of(
+                    "PRAGMA cache_size = -32768",
+                    "PRAGMA mmap_size = 268435456",
+                    "PRAGMA temp_store = MEMORY")),
+    READ_MOSTLY(List.of(
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA cache_size = -32768",
+            "PRAGMA mmap_size = 2147483648",
+            "PRAGMA temp_store = MEMORY",
+            "PRAGMA wal_autocheckpoint = 10000"),
+            List.of(
+                    // The memory map is shared between connections (it is the OS page cache), the page cache is not
+                    "PRAGMA cache_size = -16384",
+                    "PRAGMA mmap_size = 2147483648",
+                    "PRAGMA temp_store = MEMORY"));
+
+    public static final String PROPERTY = "reviews.storage.profile";
+    public static final String ENVIRONMENT_VARIABLE = "REVIEWS_STORAGE_PROFILE";
+
+    private final List<String> writerPragmas;
+    private final List<String> readerPragmas;
+
+    StorageProfile(List<String> writerPragmas, List<String> readerPragmas) {
+        this.writerPragmas = writerPragmas;
+        this.readerPragmas = readerPragmas;
+    }
+
+    /**
+     * @return the profile named by the system property, else by the environment variable, else {@link #BALANCED}
+     * @throws IllegalArgumentException if the configured name is not a profile
+     */
+    public static StorageProfile fromConfiguration() {
+        String name = System.getProperty(PROPERTY);
+        if (name == null || name.isBlank()) {
+            name = System.getenv(ENVIRONMENT_VARIABLE);
+        }
+        if (name == null || name.isBlank()) {
+            return BALANCED;
+        }
+        return parse(name);
+    }
+
+    /**
+     * @param name a profile name in any case, with dashes or underscores, e.g. {@code read-mostly}
+     */
+    public static StorageProfile parse(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        for (StorageProfile profile : values()) {
+            if (profile.name().equals(normalized)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage profile \"" + name + "\"; expected one of durable, "
+                + "balanced or read-mostly");
+    }
+
+    /**
+     * The PRAGMAs run on the writer connection, after WAL mode is switched on.
+     */
+    public List<String> getWriterPragmas() {
+        return writerPragmas;
+    }
+
+    /**
+     * The PRAGMAs run on each read-only connection.
+     */
+    public List<String> getReaderPragmas() {
+        return readerPragmas;
+    }
+
+    void applyToWriter(Connection connection) throws SQLException {
+        apply(connection, writerPragmas);
+    }
+
+    void applyToReader(Connection connection) throws SQLException {
+        apply(connection, readerPragmas);
+    }
+
+    private static void apply(Connection connection, List<String> pragmas) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String pragma : pragmas) {
+                stmt.execute(pragma);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package edu.virginia.sde.reviews;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the same {@link LoadTestDriver} workload against a database under each {@link StorageProfile} and prints the
+ * results side by side.
+ * <p>
+ * Every profile gets a fresh copy of the database, so the writes of one run cannot help or hinder the next, and the
+ * original file is never modified.
+ */
+public class StorageProfileBenchmark {
+
+    /**
+     * @return the report of running the workload against a copy of the database under the profile
+     */
+    public static LoadTestDriver.Report run(Path database, StorageProfile profile, Map<LoadTestDriver.Operation,
+            Integer> mix, int clients, Duration duration) throws Exception {
+        Path directory = Files.createTempDirectory("reviews-" + profile.name().toLowerCase());
+        Path copy = directory.resolve(database.getFileName());
+        try {
+            copyDatabase(database, copy);
+            DatabaseConnection databaseConnection = new DatabaseConnection(copy.toString(), profile);
+            databaseConnection.connect();
+            try (LoadTestDriver driver = new LoadTestDriver(databaseConnection, mix)) {
+                return driver.run(clients, duration);
+            } finally {
+                databaseConnection.disconnect();
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * @return a table of overall throughput and the median and 99th percentile latency of each operation, one row per
+     * profile
+     */
+    public static String compare(Map<StorageProfile, LoadTestDriver.Report> reports) {
+        StringBuilder table = new StringBuilder(String.format("%-12s %10s", "profile", "ops/s"));
+        for (LoadTestDriver.Operation operation : LoadTestDriver.Operation.values()) {
+            table.append(String.format(" %20s", operation.name().toLowerCase() + " p50/p99"));
+        }
+        table.append(System.lineSeparator());
+        reports.forEach((profile, report) -> {
+            table.append(String.format("%-12s %10.0f", profile.name().toLowerCase(), report.getTotalThroughput()));
+            for (LoadTestDriver.Operation operation : LoadTestDriver.Operation.values()) {
+                LatencyHistogram latency = report.getStats(operation).getLatencyNanos();
+                table.append(String.format(" %20s", latency.getCount() == 0 ? "-" : String.format("%.2f/%.2f ms",
+                        latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6)));
+            }
+            table.append(System.lineSeparator());
+        });
+        return table.toString();
+    }
+
+    // A WAL-mode database may keep committed pages in its -wal file, which has to travel with it
+    private static void copyDatabase(Path source, Path target) throws Exception {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        Path wal = source.resolveSibling(source.getFileName() + "-wal");
+        if (Files.exists(wal)) {
+            Files.copy(wal, target.resolveSibling(target.getFileName() + "-wal"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * {@code StorageProfileBenchmark <database file> [clients] [seconds per profile] [mix] [profile,...]}, e.g.
+     * {@code StorageProfileBenchmark load.db 16 30 search=70,course_page=30 durable,read-mostly}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: StorageProfileBenchmark <database file> [clients] [seconds] "
+                    + "[operation=weight,...] [profile,...]");
+            System.exit(1);
+        }
+        Path database = Path.of(args[0]);
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        Map<LoadTestDriver.Operation, Integer> mix = args.length > 3
+                ? LoadTestDriver.parseMix(args[3]) : LoadTestDriver.DEFAULT_MIX;
+        List<StorageProfile> profiles = new ArrayList<>();
+        if (args.length > 4) {
+            for (String name : args[4].split(",")) {
+                profiles.add(StorageProfile.parse(name));
+            }
+        } else {
+            profiles.addAll(List.of(StorageProfile.values()));
+        }
+
+        Map<StorageProfile, LoadTestDriver.Report> reports = new EnumMap<>(StorageProfile.class);
+        for (StorageProfile profile : profiles) {
+            System.out.println("Profile " + profile.name().toLowerCase() + ":");
+            LoadTestDriver.Report report = run(database, profile, mix, clients, Duration.ofSeconds(seconds));
+            System.out.println(report);
+            reports.put(profile, report);
+        }
+        System.out.print(compare(reports));
+    }
+}
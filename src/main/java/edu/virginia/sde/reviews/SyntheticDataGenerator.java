@@ -0,0 +1,224 @@
+package edu.virginia.sde.reviews;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Fills a fresh database with realistic-looking data for local load testing and benchmarks:
+ * <ul>
+ *     <li>users {@code student0 ... studentN}, all with the password {@value #PASSWORD}</li>
+ *     <li>courses with real subject mnemonics, valid 4-digit numbers and generated titles</li>
+ *     <li>reviews whose course popularity follows a Zipf distribution (a few courses get most of the reviews) and
+ *     whose ratings cluster around a per-course quality</li>
+ * </ul>
+ * Output is deterministic for a given seed. Because the database must be fresh, user and course ids are 1..N.
+ */
+public class SyntheticDataGenerator {
+    public static final String PASSWORD = "password123";
+
+    static final String[] SUBJECTS = {
+            "CS", "APMA", "MATH", "STAT", "ECE", "PHYS", "CHEM", "BIOL", "ECON", "HIST", "ENWR", "PSYC",
+            "PHIL", "SOC", "ASTR", "ARCH", "ARTH", "COMM", "DS", "EVSC", "MSE", "SYS", "CE", "ME"
+    };
+    static final String[] TITLE_WORDS = {
+            "Introduction", "Advanced", "Data", "Structures", "Algorithms", "Software", "Engineering", "Systems",
+            "Theory", "Computation", "Networks", "Security", "Machine", "Learning", "Linear", "Algebra",
+            "Statistics", "Probability", "Calculus", "Physics", "Chemistry", "Biology", "History", "Writing"
+    };
+    private static final String[] COMMENTS = {
+            "Great professor and well organized lectures.",
+            "Heavy workload but I learned a lot.",
+            "Exams were much harder than the homework.",
+            "Boring lectures but the projects were fun.",
+            "Would not take this course again.",
+            ""
+    };
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final int INSERT_BATCH_SIZE = 10_000;
+
+    private final Random random;
+
+    public SyntheticDataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static String username(int userIndex) {
+        return "student" + userIndex;
+    }
+
+    /**
+     * Inserts the users, courses and reviews into a database that has just been created with
+     * {@link DatabaseConnection#createTables()}. Asks for at most {@code courseCount * userCount} reviews.
+     */
+    public void generate(DatabaseConnection databaseConnection, int courseCount, int userCount, int reviewCount)
+            throws SQLException {
+        if ((long) courseCount * userCount < reviewCount) {
+            throw new IllegalArgumentException("Each user can review each course at most once");
+        }
+        insertUsers(databaseConnection, userCount);
+        double[] courseQuality = insertCourses(databaseConnection, courseCount);
+        insertReviews(databaseConnection, courseCount, userCount, reviewCount, courseQuality);
+    }
+
+    private void insertUsers(DatabaseConnection databaseConnection, int userCount) throws SQLException {
+        for (int start = 0; start < userCount; start += INSERT_BATCH_SIZE) {
+            int first = start;
+            int end = Math.min(start + INSERT_BATCH_SIZE, userCount);
+            databaseConnection.write("SyntheticDataGenerator.insertUsers", statements -> {
+                PreparedStatement stmt = statements.prepare("INSERT INTO Users (Username, Password) VALUES (?, ?)");
+                for (int i = first; i < end; i++) {
+                    stmt.setString(1, username(i));
+                    stmt.setString(2, PASSWORD);
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+        }
+    }
+
+    /**
+     * @return each course's "quality": the mean its ratings are drawn around, indexed by CourseID - 1
+     */
+    private double[] insertCourses(DatabaseConnection databaseConnection, int courseCount) throws SQLException {
+        double[] quality = new double[courseCount];
+        for (int start = 0; start < courseCount; start += INSERT_BATCH_SIZE) {
+            int first = start;
+            int end = Math.min(start + INSERT_BATCH_SIZE, courseCount);
+            databaseConnection.write("SyntheticDataGenerator.insertCourses", statements -> {
+                PreparedStatement stmt = statements.prepare("""
+                        INSERT INTO Courses (SubjectMnemonic, CourseNumber, Title) VALUES (?, ?, ?)
+                        """);
+                for (int i = first; i < end; i++) {
+                    // Course i gets subject (i % subjects) and, within the subject, the (i / subjects)-th number,
+                    // which keeps every (mnemonic, number) pair unique up to 9000 courses per subject
+                    int withinSubject = i / SUBJECTS.length;
+                    stmt.setString(1, mnemonic(i % SUBJECTS.length, withinSubject / 9000));
+                    stmt.setString(2, String.valueOf(1000 + withinSubject % 9000));
+                    stmt.setString(3, title());
+                    stmt.addBatch();
+                    quality[i] = 1.5 + random.nextDouble() * 3.5;
+                }
+                return stmt.executeBatch();
+            });
+        }
+        return quality;
+    }
+
+    private void insertReviews(DatabaseConnection databaseConnection, int courseCount, int userCount,
+                               int reviewCount, double[] courseQuality) throws SQLException {
+        double[] popularity = zipfCumulativeWeights(courseCount);
+        Set<Long> reviewedPairs = new HashSet<>();
+        long now = System.currentTimeMillis();
+        long oneYearMillis = 365L * 24 * 60 * 60 * 1000;
+        int written = 0;
+        while (written < reviewCount) {
+            int batchEnd = Math.min(written + INSERT_BATCH_SIZE, reviewCount);
+            int batchStart = written;
+            databaseConnection.write("SyntheticDataGenerator.insertReviews", statements -> {
+                PreparedStatement stmt = statements.prepare("""
+                        INSERT INTO Reviews (UserID, CourseID, Rating, Comment, Timestamp) VALUES (?, ?, ?, ?, ?)
+                        """);
+                for (int i = batchStart; i < batchEnd; i++) {
+                    int userId = random.nextInt(userCount) + 1;
+                    int courseId = pickCourse(popularity);
+                    // Popular courses saturate quickly; fall back to uniform picks rather than spinning on them
+                    while (!reviewedPairs.add((long) userId * courseCount + courseId)) {
+                        userId = random.nextInt(userCount) + 1;
+                        courseId = random.nextInt(courseCount) + 1;
+                    }
+                    int rating = (int) Math.round(courseQuality[courseId - 1] + random.nextGaussian() * 0.8);
+                    stmt.setInt(1, userId);
+                    stmt.setInt(2, courseId);
+                    stmt.setInt(3, Math.max(1, Math.min(5, rating)));
+                    stmt.setString(4, COMMENTS[random.nextInt(COMMENTS.length)]);
+                    stmt.setTimestamp(5, new Timestamp(now - (long) (random.nextDouble() * oneYearMillis)));
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+            written = batchEnd;
+        }
+    }
+
+    private double[] zipfCumulativeWeights(int courseCount) {
+        // Popularity rank is shuffled relative to CourseID so popular courses are spread over every subject
+        int[] rankOfCourse = new int[courseCount];
+        for (int i = 0; i < courseCount; i++) {
+            rankOfCourse[i] = i + 1;
+        }
+        for (int i = courseCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = rankOfCourse[i];
+            rankOfCourse[i] = rankOfCourse[j];
+            rankOfCourse[j] = swap;
+        }
+        double[] cumulative = new double[courseCount];
+        double total = 0;
+        for (int i = 0; i < courseCount; i++) {
+            total += 1.0 / Math.pow(rankOfCourse[i], ZIPF_EXPONENT);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < courseCount; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+
+    private int pickCourse(double[] cumulativeWeights) {
+        int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, cumulativeWeights.length - 1) + 1;
+    }
+
+    private String mnemonic(int subject, int generation) {
+        String base = SUBJECTS[subject];
+        if (generation == 0) {
+            return base;
+        }
+        // Very large catalogs run out of numbers, so derive extra (still 2-4 letter) subjects
+        String prefix = base.length() > 2 ? base.substring(0, 2) : base;
+        int suffix = generation - 1;
+        return prefix + (char) ('A' + suffix / 26 % 26) + (char) ('A' + suffix % 26);
+    }
+
+    private String title() {
+        String first = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+        String second = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+        return first + " " + second + " " + (random.nextInt(3) + 1);
+    }
+
+    /**
+     * Creates a database file and fills it:
+     * {@code SyntheticDataGenerator <database file> <courses> <users> <reviews> [seed]}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: SyntheticDataGenerator <database file> <courses> <users> <reviews> [seed]");
+            System.exit(1);
+        }
+        int courseCount = Integer.parseInt(args[1]);
+        int userCount = Integer.parseInt(args[2]);
+        int reviewCount = Integer.parseInt(args[3]);
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+        long start = System.nanoTime();
+        DatabaseConnection databaseConnection = new DatabaseConnection(args[0]);
+        databaseConnection.connect();
+        try {
+            databaseConnection.createTables();
+            databaseConnection.commit();
+            new SyntheticDataGenerator(seed).generate(databaseConnection, courseCount, userCount, reviewCount);
+        } finally {
+            databaseConnection.disconnect();
+        }
+        System.out.printf("Generated %d courses, %d users and %d reviews in %.1f s%n",
+                courseCount, userCount, reviewCount, (System.nanoTime() - start) / 1_000_000_000.0);
+    }
+}
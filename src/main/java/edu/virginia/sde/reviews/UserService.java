@@ -2,56 +2,105 @@ package edu.virginia.sde.reviews;
 import java.sql.*;
 import java.util.Optional;
 
+/**
+ * Registration, login and sessions. Any number of users can be logged in at once, each identified by the opaque
+ * session token returned by {@link #login(String, String)}.
+ * <p>
+ * The desktop app has exactly one user at a time, so {@link #loginUser(User)}, {@link #getCurrentUser()} and
+ * {@link #logout()} keep track of that user's session token for it.
+ */
 public class UserService {
     private final UserDatabase userDatabase;
-    private User currentUser;
+    private final SessionRegistry sessions;
+    // The desktop user's session, for the single-user methods
+    private volatile String currentSessionToken;
 
+    /**
+     * Creates a service whose sessions never expire, for the single-user desktop app.
+     */
     public UserService(UserDatabase userDatabase) {
+        this(userDatabase, new SessionRegistry(SessionRegistry.NO_EXPIRY, SessionRegistry.NO_EXPIRY));
+    }
+
+    public UserService(UserDatabase userDatabase, SessionRegistry sessions) {
         this.userDatabase = userDatabase;
+        this.sessions = sessions;
     }
 
-    public Optional<String> registerUser(User user) {
+    public WriteResult registerUser(User user) {
         if (user.getUsername() == null || user.getUsername().trim().isEmpty()) {
-            return Optional.of("Username cannot be empty.");
+            return WriteResult.invalid("Username cannot be empty.");
         }
 
         if (user.getPassword() == null || user.getPassword().length() < 8) {
-            return Optional.of("Password must be at least 8 characters.");
+            return WriteResult.invalid("Password must be at least 8 characters.");
         }
 
         try {
             if (userDatabase.checkUserNameExists(user.getUsername())) {
-                return Optional.of("Username already exists. Please try a new username.");
+                return WriteResult.conflict("Username already exists. Please try a new username.");
             }
             userDatabase.addUser(user);
-            return Optional.empty();
+            return WriteResult.ok();
         } catch (SQLException e) {
-            return Optional.of("Error registering user. Please try again later.");
+            return WriteResult.storageError("Error registering user. Please try again later.", e);
         }
     }
 
-    public boolean loginUser(User user) {
+    /**
+     * Checks the user's credentials and starts a new session for them.
+     *
+     * @return the session token, or empty if the username or password is wrong
+     */
+    public Optional<String> login(String username, String password) {
         try {
-            Optional<User> userFromDatabase = userDatabase.getUserByUsername(user.getUsername());
+            Optional<User> userFromDatabase = userDatabase.getUserByUsername(username);
 
             if (userFromDatabase.isPresent()) {
                 User fetchedUser = userFromDatabase.get();
-                if (user.getPassword().equals(fetchedUser.getPassword())) {
-                    currentUser = fetchedUser;
-                    return true;
+                if (password != null && password.equals(fetchedUser.getPassword())) {
+                    return Optional.of(sessions.create(fetchedUser).getToken());
                 }
             }
-            return false;
+            return Optional.empty();
         } catch (SQLException e) {
             throw new RuntimeException("Database error occurred", e);
         }
     }
 
+    /**
+     * @return the user logged in with the session token, or empty if the session does not exist or has expired
+     */
+    public Optional<User> getUserForSession(String sessionToken) {
+        return sessions.resolve(sessionToken).map(SessionRegistry.Session::getUser);
+    }
+
+    public void logout(String sessionToken) {
+        sessions.invalidate(sessionToken);
+    }
+
+    /**
+     * Logs the desktop user in, replacing any previous desktop session.
+     */
+    public boolean loginUser(User user) {
+        Optional<String> token = login(user.getUsername(), user.getPassword());
+        if (token.isEmpty()) {
+            return false;
+        }
+        logout();
+        currentSessionToken = token.get();
+        return true;
+    }
+
     public void logout() {
-        currentUser = null;
+        sessions.invalidate(currentSessionToken);
+        currentSessionToken = null;
     }
 
+    /**
+     * @return the desktop user, or null if nobody is logged in
+     */
     public User getCurrentUser() {
-        return currentUser;
+        return getUserForSession(currentSessionToken).orElse(null);
     }
 }
@@ -0,0 +1,95 @@
+package edu.virginia.sde.reviews;
+
+import java.util.Optional;
+
+/**
+ * The outcome of a write made through a service: either it was made, or why not, with a message fit to show the user.
+ * Callers that need to tell the reasons apart (the API's status codes, say) switch on {@link #getStatus()} rather than
+ * on the wording of the message.
+ */
+public class WriteResult {
+    public enum Status {
+        /**
+         * The write was made.
+         */
+        OK,
+        /**
+         * The input was refused, e.g. a rating outside 1-5 or a password that is too short.
+         */
+        INVALID,
+        /**
+         * The write clashes with existing data, e.g. a second review of the same course.
+         */
+        CONFLICT,
+        /**
+         * What the write was to change does not exist.
+         */
+        NOT_FOUND,
+        /**
+         * The database failed; the same write may succeed later.
+         */
+        STORAGE_ERROR
+    }
+
+    private static final WriteResult OK = new WriteResult(Status.OK, null, null);
+
+    private final Status status;
+    private final String message;
+    private final Exception cause;
+
+    private WriteResult(Status status, String message, Exception cause) {
+        this.status = status;
+        this.message = message;
+        this.cause = cause;
+    }
+
+    public static WriteResult ok() {
+        return OK;
+    }
+
+    public static WriteResult invalid(String message) {
+        return new WriteResult(Status.INVALID, message, null);
+    }
+
+    public static WriteResult conflict(String message) {
+        return new WriteResult(Status.CONFLICT, message, null);
+    }
+
+    public static WriteResult notFound(String message) {
+        return new WriteResult(Status.NOT_FOUND, message, null);
+    }
+
+    /**
+     * @param cause the database error, kept for logging
+     */
+    public static WriteResult storageError(String message, Exception cause) {
+        return new WriteResult(Status.STORAGE_ERROR, message, cause);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    /**
+     * @return the message to show the user, or empty if the write was made
+     */
+    public Optional<String> getError() {
+        return Optional.ofNullable(message);
+    }
+
+    /**
+     * @return the database error behind a {@link Status#STORAGE_ERROR}, or null
+     */
+    public Exception getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return message == null ? status.toString() : status + ": " + message;
+    }
+}
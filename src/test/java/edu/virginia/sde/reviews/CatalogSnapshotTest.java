@@ -0,0 +1,117 @@
+package edu.virginia.sde.reviews;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTest {
+    @TempDir
+    Path directory;
+
+    private DatabaseConnection databaseConnection;
+    private CourseDatabase courseDatabase;
+    private ReviewDatabase reviewDatabase;
+    private CourseService courseService;
+    private Course algorithms;
+    private Course databases;
+    private Review algorithmsReview;
+    private Review databasesReview;
+
+    @BeforeEach
+    void connect() throws SQLException {
+        databaseConnection = new DatabaseConnection(directory.resolve("reviews.sqlite").toString(), 2, 16);
+        databaseConnection.connect();
+        databaseConnection.createTables();
+        databaseConnection.commit();
+        courseDatabase = new CourseDatabase(databaseConnection);
+        reviewDatabase = new ReviewDatabase(databaseConnection);
+        courseService = new CourseService(courseDatabase, new ReviewService(reviewDatabase));
+
+        UserDatabase userDatabase = new UserDatabase(databaseConnection);
+        userDatabase.addUser(new User("alice", "password1"));
+        int userId = userDatabase.getUserByUsername("alice").orElseThrow().getId();
+
+        algorithms = new Course("CS", "3100", "Data Structures and Algorithms 2");
+        databases = new Course("CS", "4750", "Database Systems");
+        courseDatabase.addCourse(algorithms);
+        courseDatabase.addCourse(databases);
+        algorithmsReview = new Review(algorithms.getId(), userId, 5, "Hard but fair", null);
+        databasesReview = new Review(databases.getId(), userId, 4, "Useful", null);
+        reviewDatabase.addReview(algorithmsReview);
+        reviewDatabase.addReview(databasesReview);
+    }
+
+    @AfterEach
+    void disconnect() throws SQLException {
+        databaseConnection.disconnect();
+    }
+
+    private CatalogSnapshot exportSnapshot() throws SQLException, IOException {
+        Path file = directory.resolve("catalog.snap");
+        CatalogSnapshot.export(file, courseDatabase, reviewDatabase);
+        return CatalogSnapshot.read(file);
+    }
+
+    @Test
+    void holdsTheCatalogItWasTakenFrom() throws Exception {
+        CatalogSnapshot snapshot = exportSnapshot();
+
+        assertEquals(List.of(algorithms.getId(), databases.getId()),
+                snapshot.getCourses().stream().map(Course::getId).toList());
+        assertEquals(2, snapshot.getReviewCount());
+        RatingHistogramIndex ratingIndex = snapshot.toRatingIndex();
+        assertArrayEquals(new int[]{0, 0, 0, 0, 1}, ratingIndex.getDistribution(algorithms.getId()));
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0}, ratingIndex.getDistribution(databases.getId()));
+    }
+
+    @Test
+    void aCurrentSnapshotIsLoaded() throws Exception {
+        CatalogSnapshot snapshot = exportSnapshot();
+
+        assertEquals(courseDatabase.getCatalogFingerprint(), snapshot.getFingerprint());
+        assertTrue(courseService.loadSnapshot(snapshot));
+    }
+
+    @Test
+    void swappingTwoRatingsMakesTheSnapshotStale() throws Exception {
+        CatalogSnapshot snapshot = exportSnapshot();
+
+        algorithmsReview.setRating(4);
+        databasesReview.setRating(5);
+        reviewDatabase.updateReview(algorithmsReview);
+        reviewDatabase.updateReview(databasesReview);
+
+        // Every count and total is unchanged, but both courses' histograms are not
+        assertEquals(snapshot.toRatingIndex().getCatalogMean(),
+                new ReviewService(reviewDatabase).getRatingIndex().getCatalogMean());
+        assertNotEquals(snapshot.getFingerprint(), courseDatabase.getCatalogFingerprint());
+        assertFalse(courseService.loadSnapshot(snapshot));
+    }
+
+    @Test
+    void editingACommentMakesTheSnapshotStale() throws Exception {
+        CatalogSnapshot snapshot = exportSnapshot();
+
+        databasesReview.setComment("Useful, and the project was fun");
+        reviewDatabase.updateReview(databasesReview);
+
+        assertFalse(courseService.loadSnapshot(snapshot));
+    }
+
+    @Test
+    void addingACourseMakesTheSnapshotStale() throws Exception {
+        CatalogSnapshot snapshot = exportSnapshot();
+
+        courseDatabase.addCourse(new Course("CS", "4620", "Compilers"));
+
+        assertFalse(courseService.loadSnapshot(snapshot));
+    }
+}
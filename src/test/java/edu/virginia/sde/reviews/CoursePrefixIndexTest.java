@@ -0,0 +1,160 @@
+package edu.virginia.sde.reviews;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoursePrefixIndexTest {
+    private static final Course DATA_STRUCTURES = new Course(1, "CS", "2100", "Data Structures and Algorithms 1");
+    private static final Course ALGORITHMS = new Course(2, "CS", "3100", "Data Structures and Algorithms 2");
+    private static final Course DATABASES = new Course(3, "CS", "4750", "Database Systems");
+    private static final Course SDE = new Course(4, "CS", "3140", "Software Development Essentials");
+    private static final Course DATA_SCIENCE = new Course(5, "DS", "2001", "Programming for Data Science");
+    private static final Course STATISTICS = new Course(6, "STAT", "2120", "Intro to Statistics");
+
+    private static final List<Course> CATALOG =
+            List.of(DATA_STRUCTURES, ALGORITHMS, DATABASES, SDE, DATA_SCIENCE, STATISTICS);
+
+    private final CoursePrefixIndex index = CoursePrefixIndex.of(CATALOG);
+
+    @Test
+    void findsCoursesByMnemonicPrefix() {
+        assertEquals(Set.of(DATA_STRUCTURES, ALGORITHMS, DATABASES, SDE), Set.copyOf(index.search("c", 10)));
+        assertEquals(List.of(STATISTICS), index.search("sta", 10));
+    }
+
+    @Test
+    void findsCoursesByNumberPrefix() {
+        assertEquals(Set.of(DATA_STRUCTURES, STATISTICS), Set.copyOf(index.search("21", 10)));
+        assertEquals(List.of(SDE), index.search("314", 10));
+    }
+
+    @Test
+    void findsCoursesByCompactCode() {
+        assertEquals(List.of(DATA_STRUCTURES), index.search("CS21", 10));
+        assertEquals(List.of(DATABASES), index.search("cs4750", 10));
+    }
+
+    @Test
+    void findsCoursesByTitleWordPrefix() {
+        assertEquals(Set.of(DATA_STRUCTURES, ALGORITHMS, DATABASES, DATA_SCIENCE), Set.copyOf(index.search("dat", 10)));
+        assertEquals(List.of(SDE), index.search("ESSENT", 10));
+    }
+
+    @Test
+    void requiresEveryWordOfTheQueryToMatch() {
+        assertEquals(List.of(DATA_STRUCTURES), index.search("cs 21", 10));
+        assertEquals(Set.of(DATA_STRUCTURES, ALGORITHMS), Set.copyOf(index.search("data struct", 10)));
+        assertEquals(List.of(ALGORITHMS), index.search("data struct 3", 10));
+        assertEquals(List.of(), index.search("cs science", 10));
+    }
+
+    @Test
+    void matchesTheSameCoursesWhicheverWordIsMostSelective() {
+        // "s" matches many keys and "stat" only one; the order of the words must not change the result
+        assertEquals(index.search("s stat", 10), index.search("stat s", 10));
+        assertEquals(List.of(STATISTICS), index.search("s stat", 10));
+    }
+
+    @Test
+    void ignoresPunctuationAndCase() {
+        assertEquals(List.of(DATA_STRUCTURES), index.search("  cs-2100! ", 10));
+        assertEquals(index.search("DATA", 10), index.search("data", 10));
+    }
+
+    @Test
+    void returnsNothingForQueriesWithoutLettersOrDigits() {
+        assertEquals(List.of(), index.search("", 10));
+        assertEquals(List.of(), index.search("  -!? ", 10));
+        assertEquals(List.of(), index.search(null, 10));
+    }
+
+    @Test
+    void returnsNothingWhenNothingMatches() {
+        assertEquals(List.of(), index.search("zzz", 10));
+        assertEquals(List.of(), CoursePrefixIndex.empty().search("cs", 10));
+    }
+
+    @Test
+    void respectsTheLimit() {
+        assertEquals(2, index.search("cs", 2).size());
+        assertEquals(List.of(), index.search("cs", 0));
+        assertEquals(List.of(), index.search("cs", -1));
+    }
+
+    @Test
+    void returnsEachCourseOnce() {
+        // "Data Structures and Algorithms" has several keys starting with the query
+        List<Course> matches = index.search("d", 10);
+        assertEquals(matches.size(), new HashSet<>(matches).size());
+        assertEquals(Set.of(DATA_STRUCTURES, ALGORITHMS, DATABASES, SDE, DATA_SCIENCE), Set.copyOf(matches));
+    }
+
+    @Test
+    void ignoresDuplicateCourseIds() {
+        CoursePrefixIndex duplicated = CoursePrefixIndex.of(List.of(SDE, new Course(4, "XX", "9999", "Other")));
+        assertEquals(1, duplicated.size());
+        assertEquals(List.of(), duplicated.search("xx", 10));
+    }
+
+    @Test
+    void addingCoursesOneAtATimeBuildsTheSameIndex() {
+        CoursePrefixIndex incremental = CoursePrefixIndex.empty();
+        for (Course course : CATALOG.reversed()) {
+            incremental = incremental.withCourse(course);
+        }
+        assertArrayEquals(index.getKeys(), incremental.getKeys());
+        assertArrayEquals(index.getCourseIds(), incremental.getCourseIds());
+        assertEquals(CATALOG.size(), incremental.size());
+    }
+
+    @Test
+    void addingACourseLeavesTheOriginalIndexUnchanged() {
+        Course compilers = new Course(7, "CS", "4620", "Compilers");
+        CoursePrefixIndex updated = index.withCourse(compilers);
+
+        assertEquals(List.of(compilers), updated.search("compil", 10));
+        assertEquals(List.of(), index.search("compil", 10));
+        assertEquals(CATALOG.size(), index.size());
+    }
+
+    @Test
+    void addingAnIndexedCourseReturnsTheSameIndex() {
+        assertSame(index, index.withCourse(new Course(1, "XX", "0000", "Renamed")));
+    }
+
+    @Test
+    void rebuildsFromSortedKeys() {
+        CoursePrefixIndex rebuilt = CoursePrefixIndex.ofSortedKeys(index.getKeys(), index.getCourseIds(), CATALOG);
+        assertEquals(index.size(), rebuilt.size());
+        for (String query : List.of("cs", "data struct", "2", "stat", "cs4750")) {
+            assertEquals(index.search(query, 10), rebuilt.search(query, 10), query);
+        }
+    }
+
+    @Test
+    void rejectsSortedKeysThatDoNotFitTheCourses() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CoursePrefixIndex.ofSortedKeys(new String[]{"CS"}, new int[0], CATALOG));
+        assertThrows(IllegalArgumentException.class,
+                () -> CoursePrefixIndex.ofSortedKeys(new String[]{"CS"}, new int[]{99}, CATALOG));
+    }
+
+    @Test
+    void tokenizesIntoUpperCaseRunsOfLettersAndDigits() {
+        assertEquals(List.of("CS", "2100", "DATA", "STRUCTURES"),
+                CoursePrefixIndex.tokenize("cs-2100: Data Structures"));
+        assertEquals(List.of(), CoursePrefixIndex.tokenize(" ,.; "));
+        assertEquals(List.of(), CoursePrefixIndex.tokenize(null));
+    }
+
+    @Test
+    void keysIncludeTheCompactCode() {
+        assertEquals(List.of("CS", "2100", "CS2100", "DATA", "STRUCTURES", "AND", "ALGORITHMS", "1"),
+                CoursePrefixIndex.keysOf(DATA_STRUCTURES));
+    }
+}
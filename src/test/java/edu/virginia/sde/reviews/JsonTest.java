@@ -0,0 +1,118 @@
+package edu.virginia.sde.reviews;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonTest {
+
+    @Test
+    void parsesScalars() {
+        assertEquals("text", Json.parse("\"text\""));
+        assertEquals(42L, Json.parse("42"));
+        assertEquals(-7L, Json.parse("-7"));
+        assertEquals(2.5, Json.parse("2.5"));
+        assertEquals(1e3, Json.parse("1e3"));
+        assertEquals(Boolean.TRUE, Json.parse("true"));
+        assertEquals(Boolean.FALSE, Json.parse("false"));
+        assertNull(Json.parse("null"));
+    }
+
+    @Test
+    void parsesNestedObjectsAndArraysInOrder() {
+        Map<String, Object> object = Json.parseObject(" { \"b\" : [1, {\"c\": null}, []], \"a\": {} } ");
+        assertEquals(List.of("b", "a"), List.copyOf(object.keySet()));
+        List<?> array = (List<?>) object.get("b");
+        assertEquals(3, array.size());
+        assertEquals(1L, array.get(0));
+        assertTrue(((Map<?, ?>) array.get(1)).containsKey("c"));
+        assertEquals(List.of(), array.get(2));
+        assertEquals(Map.of(), object.get("a"));
+    }
+
+    @Test
+    void decodesEscapes() {
+        assertEquals("quote\" backslash\\ slash/ \b\f\n\r\t é",
+                Json.parse("\"quote\\\" backslash\\\\ slash\\/ \\b\\f\\n\\r\\t \\u00e9\""));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        for (String malformed : List.of("", "   ", "{", "[1,", "{\"a\" 1}", "{a: 1}", "\"unterminated", "\"\\x\"",
+                "\"\\u12\"", "\"\\uzzzz\"", "tru", "nul", "1 2", "{} x", "--1", "1.2.3", "@")) {
+            assertThrows(IllegalArgumentException.class, () -> Json.parse(malformed), malformed);
+        }
+    }
+
+    @Test
+    void parseObjectRejectsOtherValues() {
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("[1]"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("\"object\""));
+    }
+
+    @Test
+    void acceptsNestingUpToTheLimit() {
+        String nested = "[".repeat(Json.MAX_DEPTH) + "]".repeat(Json.MAX_DEPTH);
+        assertInstanceOf(List.class, Json.parse(nested));
+        String objects = "{\"a\":".repeat(Json.MAX_DEPTH - 1) + "{}" + "}".repeat(Json.MAX_DEPTH - 1);
+        assertInstanceOf(Map.class, Json.parse(objects));
+    }
+
+    @Test
+    void rejectsNestingBeyondTheLimit() {
+        String tooDeep = "[".repeat(Json.MAX_DEPTH + 1) + "]".repeat(Json.MAX_DEPTH + 1);
+        assertThrows(IllegalArgumentException.class, () -> Json.parse(tooDeep));
+        // Deep enough to overflow the stack of a parser without a limit, and still within the API's body size limit
+        String hostile = "{\"a\":[".repeat(10_000);
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject(hostile));
+    }
+
+    @Test
+    void siblingsDoNotAddToTheDepth() {
+        String wide = "[" + String.join(",", java.util.Collections.nCopies(1000, "[[]]")) + "]";
+        assertEquals(1000, ((List<?>) Json.parse(wide)).size());
+    }
+
+    @Test
+    void writesCompactJson() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("id", 7);
+        object.put("title", "Data \"Structures\"");
+        object.put("score", 4.5);
+        object.put("tags", List.of("a", true));
+        object.put("missing", null);
+        assertEquals("{\"id\":7,\"title\":\"Data \\\"Structures\\\"\",\"score\":4.5,\"tags\":[\"a\",true],"
+                + "\"missing\":null}", Json.write(object));
+        assertEquals("[1,\"x\"]", Json.write(new Object[]{1, "x"}));
+    }
+
+    @Test
+    void writesNonFiniteNumbersAsNull() {
+        assertEquals("[null,null,null]", Json.write(Arrays.asList(Double.NaN, Double.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY)));
+    }
+
+    @Test
+    void escapesControlCharacters() {
+        assertEquals("\"a\\nb\\u0001\\\\\"", Json.write("a\nb\u0001\\"));
+    }
+
+    @Test
+    void writeRejectsUnknownTypes() {
+        assertThrows(IllegalArgumentException.class, () -> Json.write(new Object()));
+    }
+
+    @Test
+    void writtenValuesParseBack() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("comment", "line\nbreak \u2603 \"quoted\" \t tab \u0007");
+        object.put("rating", 5L);
+        object.put("nested", List.of(Map.of("x", 1.25)));
+        assertEquals(object, Json.parse(Json.write(object)));
+    }
+}
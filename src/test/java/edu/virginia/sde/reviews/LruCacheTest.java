@@ -0,0 +1,143 @@
+package edu.virginia.sde.reviews;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load(Integer key) {
+        loads.incrementAndGet();
+        return "value " + key;
+    }
+
+    @Test
+    void loadsOnAMissAndServesHitsFromTheCache() {
+        LruCache<Integer, String> cache = new LruCache<>(4);
+
+        assertEquals("value 1", cache.get(1, this::load));
+        assertEquals("value 1", cache.get(1, this::load));
+        assertEquals("value 2", cache.get(2, this::load));
+
+        assertEquals(2, loads.get());
+        LruCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(2, stats.getSize());
+        assertEquals(1.0 / 3, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void doesNotCacheNullValues() {
+        LruCache<Integer, String> cache = new LruCache<>(4);
+
+        assertNull(cache.get(1, key -> null));
+        assertEquals("value 1", cache.get(1, this::load));
+        assertEquals(0, cache.getStats().getHits());
+        assertEquals(2, cache.getStats().getMisses());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        LruCache<Integer, String> cache = new LruCache<>(2);
+        cache.get(1, this::load);
+        cache.get(2, this::load);
+        // Touching 1 leaves 2 as the least recently used
+        cache.get(1, this::load);
+        cache.get(3, this::load);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().getEvictions());
+        loads.set(0);
+        cache.get(1, this::load);
+        cache.get(3, this::load);
+        assertEquals(0, loads.get());
+        cache.get(2, this::load);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidatedEntriesAreLoadedAgain() {
+        LruCache<Integer, String> cache = new LruCache<>(4);
+        cache.get(1, this::load);
+        cache.get(2, this::load);
+
+        cache.invalidate(1);
+        assertEquals(1, cache.size());
+        cache.get(1, this::load);
+        assertEquals(3, loads.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        cache.get(2, this::load);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void aLoadOverlappingAnInvalidationIsReturnedButNotCached() {
+        LruCache<Integer, String> cache = new LruCache<>(4);
+
+        String loaded = cache.get(1, key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+
+        assertEquals("stale", loaded);
+        assertEquals(0, cache.size());
+        assertEquals("value 1", cache.get(1, this::load));
+    }
+
+    @Test
+    void aLoadOverlappingInvalidateAllIsNotCached() {
+        LruCache<Integer, String> cache = new LruCache<>(4);
+
+        cache.get(1, key -> {
+            cache.invalidateAll();
+            return "stale";
+        });
+        // Invalidating another key still counts: the load cannot tell what the invalidation covered
+        cache.get(2, key -> {
+            cache.invalidate(3);
+            return "stale";
+        });
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void loadsAfterAnInvalidationAreCachedAgain() {
+        LruCache<Integer, String> cache = new LruCache<>(4);
+        cache.invalidateAll();
+
+        cache.get(1, this::load);
+        cache.get(1, this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void putWarmsTheCacheWithoutCountingAMiss() {
+        LruCache<Integer, String> cache = new LruCache<>(4);
+        cache.put(1, "warm");
+
+        assertEquals("warm", cache.get(1, this::load));
+        assertEquals(0, loads.get());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(0, cache.getStats().getMisses());
+    }
+
+    @Test
+    void rejectsANonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new LruCache<Integer, String>(0));
+        assertThrows(IllegalArgumentException.class, () -> new LruCache<Integer, String>(-1));
+    }
+
+    @Test
+    void hitRateOfAnUnusedCacheIsZero() {
+        assertEquals(0.0, new LruCache<Integer, String>(1).getStats().getHitRate());
+    }
+}
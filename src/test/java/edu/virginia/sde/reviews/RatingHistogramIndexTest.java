@@ -0,0 +1,232 @@
+package edu.virginia.sde.reviews;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RatingHistogramIndexTest {
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * @param counts how many 1-star, 2-star, ... 5-star reviews the course has
+     */
+    private static CourseStats stats(int courseId, int... counts) {
+        int reviewCount = 0;
+        long ratingSum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            reviewCount += counts[i];
+            ratingSum += (long) counts[i] * (i + 1);
+        }
+        return new CourseStats(courseId, reviewCount, ratingSum, counts);
+    }
+
+    @Test
+    void anEmptyIndexKnowsNoReviews() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+
+        assertEquals(0, index.getReviewCount(1));
+        assertArrayEquals(new int[5], index.getDistribution(1));
+        assertTrue(index.getMean(1).isEmpty());
+        assertTrue(index.getMedian(1).isEmpty());
+        assertEquals(3.0, index.getCatalogMean(), EPSILON);
+        assertEquals(3.0, index.getBayesianScore(1), EPSILON);
+    }
+
+    @Test
+    void unknownAndNegativeIdsReadAsUnreviewed() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(2, 0, 0, 0, 0, 1));
+
+        assertEquals(0, index.getReviewCount(1));
+        assertEquals(0, index.getReviewCount(1_000));
+        assertEquals(0, index.getReviewCount(-1));
+        assertEquals(5.0, index.getBayesianScore(-1), EPSILON);
+    }
+
+    @Test
+    void readsCountsMeanAndDistribution() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(3, 1, 0, 2, 0, 1));
+
+        assertEquals(4, index.getReviewCount(3));
+        assertArrayEquals(new int[]{1, 0, 2, 0, 1}, index.getDistribution(3));
+        assertEquals(3.0, index.getMean(3).getAsDouble(), EPSILON);
+    }
+
+    @Test
+    void medianOfAnOddNumberOfReviewsIsTheMiddleRating() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(1, 2, 0, 0, 1, 2));
+
+        assertEquals(4.0, index.getMedian(1).getAsDouble(), EPSILON);
+    }
+
+    @Test
+    void medianOfAnEvenNumberOfReviewsIsHalfwayBetweenTheMiddleRatings() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(1, 0, 1, 0, 0, 1));
+        index.put(stats(2, 0, 0, 2, 2, 0));
+
+        assertEquals(3.5, index.getMedian(1).getAsDouble(), EPSILON);
+        assertEquals(3.5, index.getMedian(2).getAsDouble(), EPSILON);
+    }
+
+    @Test
+    void putReplacesACoursesHistogramAndTheCatalogMean() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(1, 0, 0, 0, 0, 2));
+        index.put(stats(2, 2, 0, 0, 0, 0));
+        assertEquals(3.0, index.getCatalogMean(), EPSILON);
+
+        index.put(stats(2, 0, 0, 0, 0, 2));
+        assertEquals(5.0, index.getCatalogMean(), EPSILON);
+        assertArrayEquals(new int[]{0, 0, 0, 0, 2}, index.getDistribution(2));
+
+        index.put(CourseStats.empty(1));
+        index.put(CourseStats.empty(2));
+        assertEquals(3.0, index.getCatalogMean(), EPSILON);
+    }
+
+    @Test
+    void putIfNewerIgnoresOlderAndRepeatedVersions() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+
+        assertTrue(index.putIfNewer(stats(1, 0, 0, 0, 0, 1), 5));
+        assertFalse(index.putIfNewer(stats(1, 1, 0, 0, 0, 0), 4));
+        assertFalse(index.putIfNewer(stats(1, 1, 0, 0, 0, 0), 5));
+        assertArrayEquals(new int[]{0, 0, 0, 0, 1}, index.getDistribution(1));
+
+        assertTrue(index.putIfNewer(stats(1, 0, 0, 1, 0, 0), 6));
+        assertArrayEquals(new int[]{0, 0, 1, 0, 0}, index.getDistribution(1));
+        // Versions are tracked per course
+        assertTrue(index.putIfNewer(stats(2, 0, 1, 0, 0, 0), 1));
+    }
+
+    @Test
+    void rejectsNegativeCourseIdsAndPriorWeights() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+
+        assertThrows(IllegalArgumentException.class, () -> index.put(CourseStats.empty(-1)));
+        assertThrows(IllegalArgumentException.class, () -> index.putIfNewer(CourseStats.empty(-1), 1));
+        assertThrows(IllegalArgumentException.class, () -> new RatingHistogramIndex(-1));
+        assertThrows(IllegalArgumentException.class, () -> new RatingHistogramIndex(Double.NaN));
+    }
+
+    @Test
+    void rejectsCourseIdsAboveTheMaximum() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        int tooLarge = RatingHistogramIndex.MAX_COURSE_ID + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> index.put(CourseStats.empty(tooLarge)));
+        assertThrows(IllegalArgumentException.class, () -> index.putIfNewer(CourseStats.empty(tooLarge), 1));
+        // Large enough that courseId * 5 would overflow an int
+        assertThrows(IllegalArgumentException.class, () -> index.put(CourseStats.empty(Integer.MAX_VALUE / 4)));
+        assertEquals(0, index.getReviewCount(Integer.MAX_VALUE));
+
+        index.put(stats(RatingHistogramIndex.MAX_COURSE_ID, 0, 0, 0, 0, 1));
+        assertEquals(1, index.getReviewCount(RatingHistogramIndex.MAX_COURSE_ID));
+        assertTrue(index.putIfNewer(stats(RatingHistogramIndex.MAX_COURSE_ID, 0, 0, 0, 1, 0), 1));
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0}, index.getDistribution(RatingHistogramIndex.MAX_COURSE_ID));
+    }
+
+    @Test
+    void bayesianScoreShrinksSmallSamplesTowardsTheCatalogMean() {
+        RatingHistogramIndex index = new RatingHistogramIndex(5);
+        index.put(stats(1, 0, 0, 0, 0, 1));
+        index.put(stats(2, 0, 0, 0, 8, 32));
+        index.put(stats(3, 0, 0, 100, 0, 0));
+        double mean = 497.0 / 141;
+
+        assertEquals(mean, index.getCatalogMean(), EPSILON);
+        assertEquals((5 * mean + 5) / 6, index.getBayesianScore(1), EPSILON);
+        assertEquals((5 * mean + 192) / 45, index.getBayesianScore(2), EPSILON);
+        assertEquals((5 * mean + 300) / 105, index.getBayesianScore(3), EPSILON);
+        assertEquals(mean, index.getBayesianScore(4), EPSILON);
+        // A single 5-star review ranks below forty reviews averaging 4.8
+        assertArrayEquals(new int[]{2, 1, 4, 3}, index.rank(new int[]{1, 2, 3, 4}, RatingHistogramIndex.Ranking.SCORE));
+    }
+
+    @Test
+    void aZeroPriorWeightScoresByTheMean() {
+        RatingHistogramIndex index = new RatingHistogramIndex(0);
+        index.put(stats(1, 0, 0, 0, 0, 1));
+        index.put(stats(2, 0, 0, 0, 8, 32));
+
+        assertEquals(5.0, index.getBayesianScore(1), EPSILON);
+        assertEquals(4.8, index.getBayesianScore(2), EPSILON);
+    }
+
+    @Test
+    void ranksByReviewCountThenScore() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(1, 0, 0, 0, 0, 2));
+        index.put(stats(2, 2, 0, 0, 0, 0));
+        index.put(stats(3, 0, 0, 0, 0, 3));
+
+        assertArrayEquals(new int[]{3, 1, 2, 4},
+                index.rank(new int[]{4, 2, 1, 3}, RatingHistogramIndex.Ranking.REVIEW_COUNT));
+    }
+
+    @Test
+    void breaksTiesById() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(7, 0, 0, 0, 1, 0));
+        index.put(stats(3, 0, 0, 0, 1, 0));
+        index.put(stats(5, 0, 0, 0, 1, 0));
+
+        assertArrayEquals(new int[]{3, 5, 7}, index.rank(new int[]{7, 5, 3}, RatingHistogramIndex.Ranking.SCORE));
+        assertArrayEquals(new int[]{3, 5}, index.top(new int[]{7, 5, 3}, 2, RatingHistogramIndex.Ranking.SCORE));
+    }
+
+    @Test
+    void topHandlesKOutsideTheNumberOfCourses() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(1, 0, 0, 0, 0, 1));
+        index.put(stats(2, 1, 0, 0, 0, 0));
+        int[] courseIds = {2, 1};
+
+        assertArrayEquals(new int[]{1, 2}, index.top(courseIds, 10, RatingHistogramIndex.Ranking.SCORE));
+        assertArrayEquals(new int[0], index.top(courseIds, 0, RatingHistogramIndex.Ranking.SCORE));
+        assertArrayEquals(new int[0], index.top(new int[0], 3, RatingHistogramIndex.Ranking.SCORE));
+        assertThrows(IllegalArgumentException.class,
+                () -> index.top(courseIds, -1, RatingHistogramIndex.Ranking.SCORE));
+    }
+
+    @Test
+    void topIsAPrefixOfTheFullRanking() {
+        Random random = new Random(42);
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        int[] courseIds = new int[500];
+        for (int courseId = 0; courseId < courseIds.length; courseId++) {
+            courseIds[courseId] = courseId;
+            int[] counts = new int[5];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = random.nextInt(4);
+            }
+            index.put(stats(courseId, counts));
+        }
+
+        for (RatingHistogramIndex.Ranking ranking : RatingHistogramIndex.Ranking.values()) {
+            int[] ranked = index.rank(courseIds, ranking);
+            for (int k : new int[]{1, 7, 50, 499, 500}) {
+                assertArrayEquals(Arrays.copyOf(ranked, k), index.top(courseIds, k, ranking), ranking + " top " + k);
+            }
+        }
+    }
+
+    @Test
+    void courseStatsRoundTrip() {
+        RatingHistogramIndex index = new RatingHistogramIndex();
+        index.put(stats(4, 1, 2, 3, 4, 5));
+
+        CourseStats stats = index.getCourseStats(4);
+        assertEquals(4, stats.getCourseId());
+        assertEquals(15, stats.getReviewCount());
+        assertEquals(55, stats.getRatingSum());
+        assertEquals(5, stats.getRatingCount(5));
+        assertEquals(0, index.getCourseStats(9).getReviewCount());
+    }
+}
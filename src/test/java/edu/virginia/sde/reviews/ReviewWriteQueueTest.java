@@ -0,0 +1,189 @@
+package edu.virginia.sde.reviews;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewWriteQueueTest {
+    // Long enough that everything a test submits back to back lands in one batch
+    private static final Duration LINGER = Duration.ofMillis(500);
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path directory;
+
+    private DatabaseConnection databaseConnection;
+    private ReviewDatabase reviewDatabase;
+    private int userId;
+    private int otherUserId;
+    private int courseId;
+
+    @BeforeEach
+    void connect() throws SQLException {
+        databaseConnection = new DatabaseConnection(directory.resolve("reviews.sqlite").toString(), 2, 16);
+        databaseConnection.connect();
+        databaseConnection.createTables();
+        databaseConnection.commit();
+        reviewDatabase = new ReviewDatabase(databaseConnection);
+
+        UserDatabase userDatabase = new UserDatabase(databaseConnection);
+        userDatabase.addUser(new User("alice", "password1"));
+        userDatabase.addUser(new User("bob", "password2"));
+        userId = userDatabase.getUserByUsername("alice").orElseThrow().getId();
+        otherUserId = userDatabase.getUserByUsername("bob").orElseThrow().getId();
+
+        Course course = new Course("CS", "3140", "Software Development Essentials");
+        new CourseDatabase(databaseConnection).addCourse(course);
+        courseId = course.getId();
+    }
+
+    @AfterEach
+    void disconnect() throws SQLException {
+        databaseConnection.disconnect();
+    }
+
+    private Review review(int reviewerId, int rating) {
+        return new Review(courseId, reviewerId, rating, "Comment", null);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void aFailedMutationFailsOnlyItselfAndTheRestOfTheBatchCommits() throws Exception {
+        try (ReviewWriteQueue queue = new ReviewWriteQueue(databaseConnection, reviewDatabase, 16, LINGER)) {
+            Review first = review(userId, 4);
+            CompletableFuture<Boolean> added = queue.addReview(first);
+            CompletableFuture<Boolean> duplicate = queue.addReview(review(userId, 1));
+            // No such user, so the foreign key rejects it inside its savepoint
+            CompletableFuture<Boolean> orphan = queue.addReview(review(Integer.MAX_VALUE, 2));
+            CompletableFuture<Boolean> second = queue.addReview(review(otherUserId, 5));
+
+            assertTrue(await(added));
+            assertFalse(await(duplicate));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> await(orphan));
+            assertInstanceOf(SQLException.class, failure.getCause());
+            assertTrue(await(second));
+
+            assertEquals(1, queue.getBatchCount());
+            assertEquals(4, queue.getMutationCount());
+            assertEquals(4.0, queue.getAverageBatchSize());
+            assertTrue(first.getId() > 0);
+        }
+        assertEquals(2, reviewDatabase.getReviewsByCourseId(courseId).size());
+        assertEquals(4, reviewDatabase.getReviewByUserAndCourse(userId, courseId).orElseThrow().getRating());
+        CourseStats stats = reviewDatabase.getCourseStats(courseId);
+        assertEquals(2, stats.getReviewCount());
+        assertEquals(9, stats.getRatingSum());
+    }
+
+    @Test
+    void aFailedMutationDoesNotUndoEarlierWorkOnTheSameRow() throws Exception {
+        Review existing = review(userId, 3);
+        reviewDatabase.addReview(existing);
+
+        try (ReviewWriteQueue queue = new ReviewWriteQueue(databaseConnection, reviewDatabase, 16, LINGER)) {
+            existing.setRating(5);
+            CompletableFuture<OptionalInt> updated = queue.updateReview(existing);
+            CompletableFuture<Boolean> orphan = queue.addReview(review(Integer.MAX_VALUE, 1));
+
+            assertEquals(OptionalInt.of(courseId), await(updated));
+            assertThrows(ExecutionException.class, () -> await(orphan));
+        }
+        assertEquals(5, reviewDatabase.getReviewById(existing.getId()).orElseThrow().getRating());
+    }
+
+    @Test
+    void updatesAndDeletesReportTheCourseOrNothing() throws Exception {
+        Review existing = review(userId, 3);
+        reviewDatabase.addReview(existing);
+        Review missing = review(userId, 2);
+        missing.setId(Integer.MAX_VALUE);
+
+        try (ReviewWriteQueue queue = new ReviewWriteQueue(databaseConnection, reviewDatabase)) {
+            assertEquals(OptionalInt.empty(), await(queue.updateReview(missing)));
+            assertEquals(OptionalInt.empty(), await(queue.deleteReview(Integer.MAX_VALUE)));
+            assertEquals(OptionalInt.of(courseId), await(queue.deleteReview(existing.getId())));
+        }
+        assertTrue(reviewDatabase.getReviewById(existing.getId()).isEmpty());
+    }
+
+    @Test
+    void splitsBatchesAtTheMaximumSize() throws Exception {
+        try (ReviewWriteQueue queue = new ReviewWriteQueue(databaseConnection, reviewDatabase, 1, LINGER)) {
+            CompletableFuture<Boolean> first = queue.addReview(review(userId, 4));
+            CompletableFuture<Boolean> second = queue.addReview(review(otherUserId, 2));
+
+            assertTrue(await(first));
+            assertTrue(await(second));
+            assertEquals(2, queue.getBatchCount());
+        }
+    }
+
+    @Test
+    void closeCommitsQueuedMutationsAndRejectsNewOnes() throws Exception {
+        ReviewWriteQueue queue = new ReviewWriteQueue(databaseConnection, reviewDatabase, 16, LINGER);
+        CompletableFuture<Boolean> added = queue.addReview(review(userId, 4));
+        queue.close();
+
+        assertTrue(added.isDone());
+        assertTrue(await(added));
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> await(queue.addReview(review(otherUserId, 5))));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(1, reviewDatabase.getReviewsByCourseId(courseId).size());
+        // Closing twice is harmless
+        queue.close();
+    }
+
+    @Test
+    void aWriterKilledByAnErrorFailsEveryOutstandingMutationAndCommitsNothing() throws Exception {
+        // The update is written first, then the insert kills the writer thread before the batch commits
+        ReviewDatabase dying = new ReviewDatabase(databaseConnection) {
+            @Override
+            public OptionalInt insertReview(Review review) {
+                throw new AssertionError("Simulated writer failure");
+            }
+        };
+        Review existing = review(otherUserId, 3);
+        reviewDatabase.addReview(existing);
+
+        ReviewWriteQueue queue = new ReviewWriteQueue(databaseConnection, dying, 16, LINGER);
+        existing.setRating(1);
+        CompletableFuture<OptionalInt> updated = queue.updateReview(existing);
+        Review doomed = review(userId, 4);
+        CompletableFuture<Boolean> added = queue.addReview(doomed);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> await(added));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertThrows(ExecutionException.class, () -> await(updated));
+        assertThrows(ExecutionException.class, () -> await(queue.deleteReview(existing.getId())));
+        queue.close();
+
+        assertEquals(0, doomed.getId());
+        assertEquals(3, reviewDatabase.getReviewById(existing.getId()).orElseThrow().getRating());
+        // The writer connection was rolled back and released
+        assertTrue(reviewDatabase.addReview(review(userId, 5)));
+        assertEquals(2, reviewDatabase.getReviewsByCourseId(courseId).size());
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReviewWriteQueue(databaseConnection, reviewDatabase, 0, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReviewWriteQueue(databaseConnection, reviewDatabase, 1, Duration.ofMillis(-1)));
+    }
+}